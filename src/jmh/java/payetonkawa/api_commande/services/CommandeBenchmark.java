@@ -0,0 +1,93 @@
+package payetonkawa.api_commande.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.LigneCommande;
+import payetonkawa.api_commande.model.StatutCommande;
+
+// Coûts purement mémoire d'une commande selon son nombre de lignes :
+// conversion en DTO, calcul du total, sérialisation JSON du DTO
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandeBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    public int nbLignes;
+
+    private CommandeService service;
+    private ObjectMapper objectMapper;
+    private Commande commande;
+    private CommandeDto dto;
+
+    @Setup
+    public void setUp() {
+        // mapToDto ne touche à aucune dépendance du service
+        service = new CommandeService(null, null, null, null, null, null, null, null);
+        objectMapper = JsonMapper.builder().findAndAddModules().build();
+        commande = commande(nbLignes);
+        dto = service.mapToDto(commande);
+    }
+
+    static Commande commande(int nbLignes) {
+        Commande c = new Commande();
+        c.setId(1L);
+        c.setNumCommande("CMD-1");
+        c.setIdClient(1L);
+        c.setDateCreation(LocalDateTime.now());
+        c.setStatut(StatutCommande.EN_ATTENTE);
+        c.setAdresseLivraison(new Adresse(1L, 10, "Rue de la Paix", "Paris", "75001", "France"));
+        for (int i = 0; i < nbLignes; i++) {
+            LigneCommande ligne = new LigneCommande();
+            ligne.setId((long) i);
+            ligne.setProduitId((long) i);
+            ligne.setLibelleProduit("Produit " + i);
+            ligne.setQuantite(1 + i % 5);
+            ligne.setPrixUnitaire(new BigDecimal("12.90"));
+            ligne.setCommande(c);
+            c.getLignes().add(ligne);
+        }
+        c.recalculerMontantTotal();
+        return c;
+    }
+
+    @Benchmark
+    public CommandeDto mapToDto() {
+        return service.mapToDto(commande);
+    }
+
+    @Benchmark
+    public BigDecimal recalculerMontantTotal() {
+        commande.recalculerMontantTotal();
+        return commande.getMontantTotal();
+    }
+
+    @Benchmark
+    public byte[] serialiserJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dto);
+    }
+}
@@ -0,0 +1,189 @@
+package payetonkawa.api_commande.services;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import payetonkawa.api_commande.dto.AdresseDto;
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.dto.LigneCommandeDto;
+import payetonkawa.api_commande.dto.ProductDto;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.repository.AdresseRepository;
+import payetonkawa.api_commande.repository.CommandeRepository;
+import payetonkawa.api_commande.repository.EvenementOutboxRepository;
+import payetonkawa.api_commande.repository.LigneCommandeRepository;
+
+// create() de bout en bout sur H2 en mémoire : validation, adresse, catalogue,
+// réservation, INSERT de la commande et de ses lignes, événement outbox, commit.
+// L'API Produits est remplacée par un bouchon en mémoire (aucun appel HTTP).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreationCommandeBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    public int nbLignes;
+
+    private ConfigurableApplicationContext contexte;
+    private TransactionTemplate transactions;
+    private CommandeService service;
+    private CommandeDto dto;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration(exclude = RabbitAutoConfiguration.class)
+    @EntityScan(basePackageClasses = Commande.class)
+    @EnableJpaRepositories(basePackageClasses = CommandeRepository.class)
+    static class ContexteH2 {
+    }
+
+    @Setup
+    public void setUp() {
+        // Arguments de ligne de commande : prioritaires sur application.properties
+        contexte = new SpringApplicationBuilder(ContexteH2.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.flyway.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.payetonkawa=WARN");
+
+        ObjectMapper objectMapper = contexte.getBean(ObjectMapper.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        transactions = new TransactionTemplate(contexte.getBean(PlatformTransactionManager.class));
+
+        Map<Long, ProductDto> catalogue = new HashMap<>();
+        List<LigneCommandeDto> lignes = new ArrayList<>();
+        for (long i = 1; i <= nbLignes; i++) {
+            ProductDto produit = new ProductDto();
+            produit.setId(i);
+            produit.setName("Produit " + i);
+            produit.setPrice(new BigDecimal("12.90"));
+            catalogue.put(i, produit);
+            lignes.add(new LigneCommandeDto(null, i, null, 2, null, null));
+        }
+
+        AtomicLong numeros = new AtomicLong();
+        service = new CommandeService(
+                contexte.getBean(CommandeRepository.class),
+                contexte.getBean(LigneCommandeRepository.class),
+                new AdresseBouchon(contexte.getBean(AdresseRepository.class), registry),
+                new ProduitClientBouchon(catalogue, registry),
+                new OutboxService(contexte.getBean(EvenementOutboxRepository.class), objectMapper),
+                () -> NumCommandeGenerator.PREFIXE + numeros.incrementAndGet(),
+                new CommandeMetriques(registry),
+                new CacheCommandesClient(10_000, Duration.ofMinutes(5)));
+
+        AdresseDto adresse = new AdresseDto();
+        adresse.setNumeroRue(10);
+        adresse.setRue("Rue de la Paix");
+        adresse.setVille("Paris");
+        adresse.setCodePostal("75001");
+        adresse.setPays("France");
+
+        dto = new CommandeDto();
+        dto.setIdClient(1L);
+        dto.setAdresseLivraison(adresse);
+        dto.setLignes(lignes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        contexte.close();
+    }
+
+    @Benchmark
+    public CommandeDto create() {
+        return transactions.execute(statut -> service.create(dto));
+    }
+
+    // L'upsert natif (ON CONFLICT ... RETURNING) est propre à PostgreSQL :
+    // sur H2, l'adresse est insérée une fois puis réutilisée
+    static class AdresseBouchon extends AdresseService {
+
+        private final AdresseRepository adresseRepository;
+        private Long id;
+
+        AdresseBouchon(AdresseRepository adresseRepository, SimpleMeterRegistry registry) {
+            super(adresseRepository, registry);
+            this.adresseRepository = adresseRepository;
+        }
+
+        @Override
+        public Adresse trouverOuCreer(Adresse a) {
+            if (id == null) {
+                id = adresseRepository.save(a).getId();
+            }
+            return adresseRepository.getReferenceById(id);
+        }
+    }
+
+    static class ProduitClientBouchon extends ProduitClient {
+
+        private final Map<Long, ProductDto> catalogue;
+
+        ProduitClientBouchon(Map<Long, ProductDto> catalogue, SimpleMeterRegistry registry) {
+            super(new RestTemplate(), Runnable::run, registry,
+                    CircuitBreaker.ofDefaults("benchmark"), Bulkhead.ofDefaults("benchmark"));
+            this.catalogue = catalogue;
+        }
+
+        @Override
+        public Map<Long, ProductDto> getProduitsByIds(Collection<Long> produitIds) {
+            return catalogue;
+        }
+
+        @Override
+        public String reserverStock(String reservationId, Map<Long, Integer> quantitesParProduit) {
+            return reservationId;
+        }
+
+        @Override
+        public void annulerReservation(String reservationId) {
+        }
+    }
+}
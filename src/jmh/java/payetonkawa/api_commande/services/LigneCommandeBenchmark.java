@@ -0,0 +1,41 @@
+package payetonkawa.api_commande.services;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import payetonkawa.api_commande.model.LigneCommande;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LigneCommandeBenchmark {
+
+    private LigneCommande ligne;
+
+    @Setup
+    public void setUp() {
+        ligne = new LigneCommande();
+        ligne.setQuantite(3);
+        ligne.setPrixUnitaire(new BigDecimal("12.90"));
+    }
+
+    @Benchmark
+    public BigDecimal calculerMontant() {
+        ligne.calculerMontant();
+        return ligne.getMontant();
+    }
+}
@@ -0,0 +1,26 @@
+package payetonkawa.api_commande.config;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.services.CacheCommandesClient;
+
+// Garde le cache des commandes par client cohérent entre réplicas : toute écriture,
+// quelle que soit l'instance qui l'a faite, finit en événement commande.*
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CommandeEvenementsListener {
+
+    private final CacheCommandesClient cacheClients;
+
+    @RabbitListener(queues = "#{invalidationCacheQueue.name}")
+    public void recevoir(CommandeDto commande) {
+        log.debug("Événement reçu pour la commande {}, cache du client {} invalidé",
+                commande.getNumCommande(), commande.getIdClient());
+        cacheClients.invalider(commande.getIdClient());
+    }
+}
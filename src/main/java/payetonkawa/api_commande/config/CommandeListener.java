@@ -1,16 +1,18 @@
 package payetonkawa.api_commande.config;
 
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
 import payetonkawa.api_commande.dto.CommandeDto;
 
 @Component
+@Slf4j
 public class CommandeListener {
 
     @RabbitListener(queues = "commandes.queue")
     public void receive(CommandeDto commande) {
-        System.out.println("Commande reçu depuis RabbitMQ : " + commande);
+        log.debug("Commande reçue depuis RabbitMQ : {}", commande.getNumCommande());
     }
 }
\ No newline at end of file
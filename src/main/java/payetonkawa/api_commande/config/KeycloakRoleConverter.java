@@ -1,5 +1,6 @@
 package payetonkawa.api_commande.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+@Slf4j
 public class KeycloakRoleConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
 
     @Override
@@ -31,7 +33,7 @@ public class KeycloakRoleConverter implements Converter<Jwt, Collection<GrantedA
                 .map(role -> new SimpleGrantedAuthority((String) role))
                 .collect(Collectors.toList());
 
-        System.out.println("🔐 Authorities extraites: " + authorities);
+        log.debug("Authorities extraites: {}", authorities);
         return authorities;
     }
 }
@@ -0,0 +1,58 @@
+package payetonkawa.api_commande.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+// Borne le nombre de requêtes traitées en même temps : avec des threads virtuels,
+// rien d'autre n'empêche des milliers de requêtes d'attaquer PostgreSQL ensemble.
+@Slf4j
+public class LimiteRequetesFilter extends OncePerRequestFilter {
+
+    private final Semaphore permis;
+    private final long attenteMaxMs;
+
+    public LimiteRequetesFilter(int requetesMax, Duration attenteMax) {
+        this.permis = new Semaphore(requetesMax, true);
+        this.attenteMaxMs = attenteMax.toMillis();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquis;
+        try {
+            acquis = permis.tryAcquire(attenteMaxMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquis = false;
+        }
+
+        if (!acquis) {
+            log.warn("Trop de requêtes simultanées, {} {} rejetée", request.getMethod(), request.getRequestURI());
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Service saturé, réessayez plus tard");
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permis.release();
+        }
+    }
+
+    public int getPermisDisponibles() {
+        return permis.availablePermits();
+    }
+}
@@ -20,9 +20,10 @@ public class RabbitConfig {
     @Value("${rabbitmq.commandes.routing-key}")
     private String routingKey;
 
+    // Durable : avec des messages persistants, les événements survivent à un redémarrage du broker
     @Bean
     public Queue commandesQueue() {
-        return new Queue(queueName, false);
+        return new Queue(queueName, true);
     }
 
     @Bean
@@ -34,6 +35,18 @@ public class RabbitConfig {
     public Binding binding(Queue commandesQueue, TopicExchange commandesExchange) {
         return BindingBuilder.bind(commandesQueue).to(commandesExchange).with(routingKey);
     }
+
+    // File propre à chaque instance (exclusive, supprimée à l'arrêt) : chaque réplica reçoit
+    // tous les événements commande.* pour invalider son cache des commandes par client
+    @Bean
+    public AnonymousQueue invalidationCacheQueue() {
+        return new AnonymousQueue(new Base64UrlNamingStrategy("commandes.cache."));
+    }
+
+    @Bean
+    public Binding invalidationCacheBinding(AnonymousQueue invalidationCacheQueue, TopicExchange commandesExchange) {
+        return BindingBuilder.bind(invalidationCacheQueue).to(commandesExchange).with("commande.#");
+    }
     // Déclare un MessageConverter JSON pour envoyer/recevoir des objets
 
     @Bean
@@ -0,0 +1,80 @@
+package payetonkawa.api_commande.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+@Configuration
+public class ResilienceConfig {
+
+    private static final String API_PRODUITS = "api-produits";
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(
+            @Value("${api.produits.circuit.seuil-echec:50}") float seuilEchec,
+            @Value("${api.produits.circuit.seuil-lenteur:80}") float seuilLenteur,
+            @Value("${api.produits.circuit.appel-lent:3s}") Duration appelLent,
+            @Value("${api.produits.circuit.fenetre:20}") int fenetre,
+            @Value("${api.produits.circuit.appels-minimum:10}") int appelsMinimum,
+            @Value("${api.produits.circuit.duree-ouverture:10s}") Duration dureeOuverture,
+            @Value("${api.produits.circuit.appels-sonde:3}") int appelsSonde) {
+        return CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(seuilEchec)
+                .slowCallRateThreshold(seuilLenteur)
+                .slowCallDurationThreshold(appelLent)
+                .slidingWindowSize(fenetre)
+                .minimumNumberOfCalls(appelsMinimum)
+                .waitDurationInOpenState(dureeOuverture)
+                // Demi-ouverture : quelques appels sondent l'API avant de refermer le circuit
+                .permittedNumberOfCallsInHalfOpenState(appelsSonde)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // Un 4xx (produit inconnu, stock insuffisant...) ne traduit pas une panne
+                .ignoreExceptions(HttpClientErrorException.class, BulkheadFullException.class)
+                .build());
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry(
+            @Value("${api.produits.bulkhead.appels-simultanes:50}") int appelsSimultanes,
+            @Value("${api.produits.bulkhead.attente-max:100ms}") Duration attenteMax) {
+        return BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(appelsSimultanes)
+                .maxWaitDuration(attenteMax)
+                .build());
+    }
+
+    @Bean
+    public CircuitBreaker produitsCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return circuitBreakerRegistry.circuitBreaker(API_PRODUITS);
+    }
+
+    @Bean
+    public Bulkhead produitsBulkhead(BulkheadRegistry bulkheadRegistry) {
+        return bulkheadRegistry.bulkhead(API_PRODUITS);
+    }
+
+    // État du circuit, appels refusés, places libres du bulkhead
+    @Bean
+    public MeterBinder circuitBreakerMetrics(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry);
+    }
+
+    @Bean
+    public MeterBinder bulkheadMetrics(BulkheadRegistry bulkheadRegistry) {
+        return TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry);
+    }
+}
@@ -1,14 +1,93 @@
 package payetonkawa.api_commande.config;
 
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+
 @Configuration
 public class RestClientConfig {
 
+    // Pool de connexions HTTP (keep-alive) vers l'API Produits
+    @Bean
+    public PoolingHttpClientConnectionManager produitsConnectionManager(
+            @Value("${api.produits.http.max-connexions:200}") int maxConnexions,
+            @Value("${api.produits.http.max-connexions-par-route:50}") int maxConnexionsParRoute,
+            @Value("${api.produits.http.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${api.produits.http.read-timeout:5s}") Duration readTimeout,
+            @Value("${api.produits.http.duree-vie-connexion:5m}") Duration dureeVieConnexion) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnexions)
+                .setMaxConnPerRoute(maxConnexionsParRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setTimeToLive(TimeValue.of(dureeVieConnexion))
+                        // Revalide une connexion restée inactive avant de la réutiliser
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean
+    public CloseableHttpClient produitsHttpClient(PoolingHttpClientConnectionManager produitsConnectionManager,
+            @Value("${api.produits.http.read-timeout:5s}") Duration readTimeout,
+            @Value("${api.produits.http.attente-connexion:1s}") Duration attenteConnexion,
+            @Value("${api.produits.http.inactivite-max:30s}") Duration inactiviteMax) {
+        return HttpClients.custom()
+                .setConnectionManager(produitsConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // Temps max pour obtenir une connexion du pool quand il est saturé
+                        .setConnectionRequestTimeout(Timeout.of(attenteConnexion))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(inactiviteMax))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient produitsHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(produitsHttpClient));
+    }
+
+    // Métriques du pool : connexions leased / available / pending
+    @Bean
+    public MeterBinder produitsConnectionPoolMetrics(PoolingHttpClientConnectionManager produitsConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(produitsConnectionManager, "api-produits");
+    }
+
+    // Pool dédié aux appels parallèles vers l'API Produits (voir VirtualThreadsConfig
+    // pour l'équivalent en threads virtuels)
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor produitClientExecutor(
+            @Value("${api.produits.fan-out.threads:16}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 10);
+        executor.setThreadNamePrefix("produits-");
+        // Si le pool est saturé, le thread appelant fait l'appel lui-même
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+package payetonkawa.api_commande.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // Workers du mode asynchrone : file bornée, une commande refusée faute de place
+    // reste en base et sera reprise par TraitementCommandesService.reprendre()
+    @Bean
+    public ThreadPoolTaskExecutor traitementCommandesExecutor(
+            @Value("${commandes.async.threads:4}") int threads,
+            @Value("${commandes.async.file-max:1000}") int fileMax) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(fileMax);
+        executor.setThreadNamePrefix("traitement-");
+        // À l'arrêt, les commandes en cours se terminent ; celles en file seront reprises
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
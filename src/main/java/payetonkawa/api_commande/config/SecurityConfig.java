@@ -1,6 +1,7 @@
 package payetonkawa.api_commande.config;
 
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -21,6 +22,13 @@ import java.util.List;
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    // Surchargeables (tests de charge, environnements hors docker-compose)
+    @Value("${securite.jwt.jwk-set-uri:http://keycloak:8080/realms/paye-ton-kawa/protocol/openid-connect/certs}")
+    private String jwkSetUri;
+
+    @Value("${securite.jwt.issuer:http://localhost:8083/realms/paye-ton-kawa}")
+    private String issuer;
+
     @PostConstruct
     public void init() {
         System.out.println(">>> SecurityConfig LOADED <<<");
@@ -35,6 +43,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/debug/**").permitAll()
                         .requestMatchers("/swagger-ui/**").permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                         .requestMatchers("/commandes/**").hasAuthority("COMMANDE_READ")
                         .anyRequest().authenticated())
                 .oauth2ResourceServer(oauth2 -> oauth2
@@ -70,14 +79,9 @@ public class SecurityConfig {
 
     @Bean
     public JwtDecoder jwtDecoder() {
-        // String jwkSetUri =
-        // "http://localhost:8083/realms/paye-ton-kawa/protocol/openid-connect/certs";
-        String jwkSetUri = "http://keycloak:8080/realms/paye-ton-kawa/protocol/openid-connect/certs";
-
         NimbusJwtDecoder decoder = NimbusJwtDecoder.withJwkSetUri(jwkSetUri).build();
 
-        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(
-                "http://localhost:8083/realms/paye-ton-kawa"));
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuer));
 
         System.out.println(">>> JwtDecoder CREATED <<<");
         return decoder;
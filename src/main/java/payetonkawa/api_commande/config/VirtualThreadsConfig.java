@@ -0,0 +1,52 @@
+package payetonkawa.api_commande.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Mode threads virtuels (spring.threads.virtual.enabled=true, profil "virtual").
+// Tomcat et le conteneur @RabbitListener passent alors sur des threads virtuels
+// via l'auto-configuration Spring Boot ; ici on adapte ce qui nous est propre.
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfig {
+
+    // Appels parallèles vers l'API Produits : un thread virtuel par appel,
+    // plafonné au nombre d'appels que le bulkhead laisse passer de toute façon
+    @Bean
+    public SimpleAsyncTaskExecutor produitClientExecutor(
+            @Value("${api.produits.bulkhead.appels-simultanes:50}") int appelsSimultanes) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("produits-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(appelsSimultanes);
+        return executor;
+    }
+
+    @Bean
+    public FilterRegistrationBean<LimiteRequetesFilter> limiteRequetesFilter(
+            // Par défaut, une requête par connexion du pool JDBC (10 : défaut Hikari)
+            @Value("${commandes.virtual.requetes-max:${spring.datasource.hikari.maximum-pool-size:10}}") int requetesMax,
+            @Value("${commandes.virtual.attente-max:250ms}") Duration attenteMax) {
+        FilterRegistrationBean<LimiteRequetesFilter> registration =
+                new FilterRegistrationBean<>(new LimiteRequetesFilter(requetesMax, attenteMax));
+        registration.addUrlPatterns("/commandes/*", "/clients/*");
+        return registration;
+    }
+
+    @Bean
+    public MeterBinder limiteRequetesMetrics(FilterRegistrationBean<LimiteRequetesFilter> limiteRequetesFilter) {
+        return registry -> Gauge.builder("commandes.requetes.permis.disponibles",
+                limiteRequetesFilter.getFilter(), LimiteRequetesFilter::getPermisDisponibles)
+                .description("Places libres dans la limite de requêtes simultanées")
+                .register(registry);
+    }
+}
@@ -1,6 +1,7 @@
 package payetonkawa.api_commande.controller;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -8,6 +9,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import payetonkawa.api_commande.dto.CommandeDto;
@@ -31,14 +33,20 @@ public class ClientCommandeController {
         return ResponseEntity.ok(commandes);
     }
 
-    // Récupérer les produits d’une commande spécifique d’un client
+    // Récupérer les produits d’une commande spécifique d’un client.
+    // La version est lue avant les lignes : l'ETag n'est jamais plus récent que le contenu.
     @GetMapping("/{clientId}/commandes/{commandeId}/products")
     public ResponseEntity<List<LigneCommandeDto>> getProductsFromCommande(
             @PathVariable Long clientId,
-            @PathVariable Long commandeId) {
+            @PathVariable Long commandeId,
+            WebRequest requete) {
         try {
+            Optional<Long> version = commandeService.getVersion(clientId, commandeId);
+            if (version.isPresent() && requete.checkNotModified(EtagsCommande.etag(version.get()))) {
+                return null;
+            }
             List<LigneCommandeDto> products = commandeService.getProductsByClientIdAndCommandeId(clientId, commandeId);
-            return ResponseEntity.ok(products);
+            return EtagsCommande.ok(version.orElse(null)).body(products);
         } catch (ResponseStatusException e) {
             return ResponseEntity.status(e.getStatusCode()).body(null);
         } catch (Exception e) {
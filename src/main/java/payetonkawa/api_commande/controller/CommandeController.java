@@ -1,21 +1,31 @@
 package payetonkawa.api_commande.controller;
 
+import java.net.URI;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.security.core.Authentication;
 
@@ -24,7 +34,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import payetonkawa.api_commande.dto.CommandeDto;
 import payetonkawa.api_commande.dto.LigneCommandeDto;
+import payetonkawa.api_commande.dto.PageCommandesDto;
+import payetonkawa.api_commande.dto.TraitementCommandeDto;
+import payetonkawa.api_commande.model.EtatTraitement;
+import payetonkawa.api_commande.model.StatutCommande;
 import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.TraitementCommandesService;
 
 @RestController
 @RequestMapping("/commandes")
@@ -32,14 +47,29 @@ import payetonkawa.api_commande.services.CommandeService;
 @Slf4j
 public class CommandeController {
 
+    private static final String RESPOND_ASYNC = "respond-async";
+
     private final CommandeService service;
+    private final TraitementCommandesService traitementService;
 
+    // Prefer: respond-async (RFC 7240) : 202 immédiat, la commande est traitée en arrière-plan
+    // et son issue se suit sur l'URL renvoyée dans Location
     @PostMapping
-    public ResponseEntity<CommandeDto> create(@Valid @RequestBody CommandeDto commandeDto) {
+    public ResponseEntity<?> create(@Valid @RequestBody CommandeDto commandeDto,
+            @RequestHeader(value = "Prefer", required = false) String prefer) {
+
+        if (prefer != null && prefer.contains(RESPOND_ASYNC)) {
+            CommandeDto acceptee = traitementService.accepter(commandeDto);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/commandes/" + acceptee.getId() + "/traitement"))
+                    .header("Preference-Applied", RESPOND_ASYNC)
+                    .body(new TraitementCommandeDto(acceptee.getId(), acceptee.getNumCommande(),
+                            acceptee.getStatut(), EtatTraitement.A_TRAITER, null));
+        }
 
-        log.info("Requête de création de commande reçue pour le client: {}", commandeDto.getIdClient());
+        log.debug("Requête de création de commande reçue pour le client: {}", commandeDto.getIdClient());
         CommandeDto createdCommande = service.create(commandeDto);
-        log.info("Commande {} créée avec succès via le contrôleur.", createdCommande.getId());
+        log.debug("Commande {} créée avec succès via le contrôleur.", createdCommande.getId());
         return new ResponseEntity<>(createdCommande, HttpStatus.CREATED);
     }
 
@@ -51,28 +81,56 @@ public class CommandeController {
                         .collect(Collectors.toList())));
     }
 
+    // GET /commandes?statut=&idClient=&dateDebut=&dateFin=&curseur=&taille=
     @GetMapping
     @PreAuthorize("hasAuthority('COMMANDE_READ')")
-    public List<CommandeDto> all() {
-        return service.all();
+    public PageCommandesDto all(
+            @RequestParam(required = false) StatutCommande statut,
+            @RequestParam(required = false) Long idClient,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin,
+            @RequestParam(required = false) String curseur,
+            @RequestParam(required = false) Integer taille) {
+        return service.lister(statut, idClient, dateDebut, dateFin, curseur, taille);
     }
 
-    // GET /commandes/{id}
+    // GET /commandes/{id}/traitement : avancement d'une commande soumise en asynchrone
+    @GetMapping("/{id}/traitement")
+    public ResponseEntity<TraitementCommandeDto> getTraitement(@PathVariable Long id) {
+        return ResponseEntity.ok(service.getTraitement(id));
+    }
+
+    // GET /commandes/{id} ; If-None-Match : 304 sur la seule lecture de la version
     @GetMapping("/{id}")
-    public ResponseEntity<CommandeDto> getCommande(@PathVariable Long id) {
-        return ResponseEntity.ok(service.getCommandeById(id));
+    public ResponseEntity<CommandeDto> getCommande(@PathVariable Long id, WebRequest requete) {
+        if (requete.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<Long> version = service.getVersion(id);
+            if (version.isPresent() && requete.checkNotModified(EtagsCommande.etag(version.get()))) {
+                return null;
+            }
+        }
+        CommandeDto commande = service.getCommandeById(id);
+        return EtagsCommande.ok(commande.getVersion()).body(commande);
     }
 
+    // If-Match : 412 si la commande a changé depuis la version lue par le client
     @PutMapping("/{id}")
     public ResponseEntity<CommandeDto> updateCommande(
             @PathVariable Long id,
-            @Valid @RequestBody CommandeDto dto) {
-        log.info("Requête de mise à jour de la commande ID: {} reçue.", id);
+            @Valid @RequestBody CommandeDto dto,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        log.debug("Requête de mise à jour de la commande ID: {} reçue.", id);
 
         try {
-            CommandeDto updatedCommande = service.update(id, dto);
-            log.info("Commande {} mise à jour avec succès via le contrôleur.", updatedCommande.getId());
-            return ResponseEntity.ok(updatedCommande);
+            CommandeDto updatedCommande = service.update(id, dto, EtagsCommande.versionAttendue(ifMatch));
+            log.debug("Commande {} mise à jour avec succès via le contrôleur.", updatedCommande.getId());
+            return EtagsCommande.ok(updatedCommande.getVersion()).body(updatedCommande);
+        } catch (ResponseStatusException e) {
+            log.debug("Mise à jour de la commande ID {} refusée : {}", id, e.getReason());
+            return ResponseEntity.status(e.getStatusCode()).body(null);
+        } catch (OptimisticLockingFailureException e) {
+            log.debug("Commande ID {} modifiée par une requête concurrente", id);
+            return ResponseEntity.status(conflit(ifMatch)).body(null);
         } catch (RuntimeException e) {
             log.error("Erreur lors de la mise à jour de la commande ID {} : {}", id, e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -103,9 +161,36 @@ public class CommandeController {
     @PutMapping("/{id}/lines")
     public ResponseEntity<CommandeDto> updateCommandeLignes(
             @PathVariable Long id,
-            @RequestBody List<LigneCommandeDto> lignes) {
+            @RequestBody List<LigneCommandeDto> lignes,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        try {
+            CommandeDto updated = service.updateCommandeLignes(id, lignes, EtagsCommande.versionAttendue(ifMatch));
+            return EtagsCommande.ok(updated.getVersion()).body(updated);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(conflit(ifMatch), "Commande modifiée par une requête concurrente");
+        }
+    }
+
+    // PATCH /commandes/{id}/lines/{ligneId} : une seule ligne, champs absents inchangés
+    @PatchMapping("/{id}/lines/{ligneId}")
+    public ResponseEntity<CommandeDto> updateLigne(
+            @PathVariable Long id,
+            @PathVariable Long ligneId,
+            @RequestBody LigneCommandeDto modification,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        try {
+            CommandeDto updated = service.updateLigne(id, ligneId, modification,
+                    EtagsCommande.versionAttendue(ifMatch));
+            return EtagsCommande.ok(updated.getVersion()).body(updated);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(conflit(ifMatch), "Commande modifiée par une requête concurrente");
+        }
+    }
 
-        CommandeDto updated = service.updateCommandeLignes(id, lignes);
-        return ResponseEntity.ok(updated);
+    // Écriture concurrente détectée au flush : précondition échouée si le client en avait posé une
+    private static HttpStatus conflit(String ifMatch) {
+        return ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT;
     }
 }
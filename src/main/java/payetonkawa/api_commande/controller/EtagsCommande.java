@@ -0,0 +1,46 @@
+package payetonkawa.api_commande.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+// ETag fort d'une commande : sa version (@Version). Les réponses restent revalidables
+// (no-cache) : un client qui interroge en boucle reçoit un 304 sans corps tant que
+// la commande n'a pas changé.
+final class EtagsCommande {
+
+    private EtagsCommande() {
+    }
+
+    static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    static ResponseEntity.BodyBuilder ok(Long version) {
+        ResponseEntity.BodyBuilder reponse = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate());
+        if (version != null) {
+            reponse.eTag(etag(version));
+        }
+        return reponse;
+    }
+
+    // Version attendue par If-Match, null si absent ou "*". Comparaison forte (RFC 9110) :
+    // un ETag faible ou illisible ne correspond à aucune version.
+    static Long versionAttendue(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String valeur = ifMatch.trim();
+        if (valeur.length() > 2 && valeur.startsWith("\"") && valeur.endsWith("\"")) {
+            try {
+                return Long.valueOf(valeur.substring(1, valeur.length() - 1));
+            } catch (NumberFormatException e) {
+                // Ne correspond à aucune version
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                "If-Match ne correspond à aucune version de la commande: " + ifMatch);
+    }
+}
@@ -0,0 +1,60 @@
+package payetonkawa.api_commande.controller;
+
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import lombok.RequiredArgsConstructor;
+import payetonkawa.api_commande.model.StatutCommande;
+import payetonkawa.api_commande.services.ExportCommandesService;
+
+@RestController
+@RequestMapping("/commandes/export")
+@RequiredArgsConstructor
+public class ExportCommandesController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ExportCommandesService exportService;
+
+    // GET /commandes/export?statut=&dateDebut=&dateFin= (gzip si Accept-Encoding le permet)
+    @GetMapping
+    @PreAuthorize("hasAuthority('COMMANDE_READ')")
+    public ResponseEntity<StreamingResponseBody> exporter(
+            @RequestParam(required = false) StatutCommande statut,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateDebut,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dateFin,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        StreamingResponseBody corps = out -> {
+            if (gzip) {
+                try (OutputStream compresse = new GZIPOutputStream(out, 8192)) {
+                    exportService.exporter(statut, dateDebut, dateFin, compresse);
+                }
+            } else {
+                exportService.exporter(statut, dateDebut, dateFin, out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder reponse = ResponseEntity.ok().contentType(NDJSON);
+        if (gzip) {
+            reponse.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return reponse.body(corps);
+    }
+}
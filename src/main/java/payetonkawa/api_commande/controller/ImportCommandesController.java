@@ -0,0 +1,34 @@
+package payetonkawa.api_commande.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+import payetonkawa.api_commande.dto.RapportImportDto;
+import payetonkawa.api_commande.services.ImportCommandesService;
+
+@RestController
+@RequestMapping("/commandes/import")
+@RequiredArgsConstructor
+public class ImportCommandesController {
+
+    private final ImportCommandesService importService;
+
+    // POST /commandes/import : tableau JSON ou NDJSON de CommandeDto, éventuellement gzippé.
+    // Le corps est lu en flux ; le rapport donne l'issue de chaque commande dans l'ordre reçu.
+    @PostMapping(consumes = { MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson" })
+    public RapportImportDto importer(InputStream corps,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding)
+            throws IOException {
+        InputStream in = "gzip".equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(corps, 8192) : corps;
+        return importService.importer(in);
+    }
+}
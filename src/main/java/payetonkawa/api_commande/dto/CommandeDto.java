@@ -1,5 +1,7 @@
 package payetonkawa.api_commande.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -26,4 +28,8 @@ public class CommandeDto {
     private List<LigneCommandeDto> lignes;
 
     private BigDecimal montantTotal;
+
+    // Renvoyée aussi en ETag ; la version attendue d'une modification passe par If-Match
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
 }
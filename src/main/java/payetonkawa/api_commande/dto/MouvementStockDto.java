@@ -0,0 +1,15 @@
+package payetonkawa.api_commande.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MouvementStockDto {
+
+    private Long produitId;
+    // Variation relative du stock (négative pour une réservation)
+    private int delta;
+}
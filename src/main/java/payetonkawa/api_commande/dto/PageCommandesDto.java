@@ -0,0 +1,18 @@
+package payetonkawa.api_commande.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageCommandesDto {
+
+    private List<CommandeDto> commandes;
+
+    // Jeton opaque à renvoyer dans ?curseur= pour la page suivante (null si dernière page)
+    private String curseurSuivant;
+}
@@ -1,5 +1,6 @@
 package payetonkawa.api_commande.dto;
 
+import java.math.BigDecimal;
 import java.util.Date;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -14,8 +15,10 @@ public class ProductDto {
     @JsonProperty("name")
     private String name;
     private String description;
-    private float price;
-    private int stock;
+    // Décimal exact tel que reçu en JSON (pas d'arrondi binaire d'un float)
+    private BigDecimal price;
+    // null quand le produit vient du cache : le stock n'y est jamais conservé
+    private Integer stock;
     private Date createdAt;
 
     
@@ -0,0 +1,18 @@
+package payetonkawa.api_commande.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RapportImportDto {
+
+    private int total;
+    private int creees;
+    private int rejetees;
+    private List<ResultatImportDto> resultats;
+}
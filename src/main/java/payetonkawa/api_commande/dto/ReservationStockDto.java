@@ -0,0 +1,17 @@
+package payetonkawa.api_commande.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationStockDto {
+
+    // Sert aussi de clé d'idempotence côté API Produits
+    private String reservationId;
+    private List<MouvementStockDto> mouvements;
+}
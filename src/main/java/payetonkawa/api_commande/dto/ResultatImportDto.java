@@ -0,0 +1,18 @@
+package payetonkawa.api_commande.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Résultat d'une commande d'un import, à sa position dans le flux reçu
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultatImportDto {
+
+    private int index;
+    private String numCommande;
+    private Long id;
+    private boolean succes;
+    private String erreur;
+}
@@ -0,0 +1,20 @@
+package payetonkawa.api_commande.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import payetonkawa.api_commande.model.EtatTraitement;
+import payetonkawa.api_commande.model.StatutCommande;
+
+// Réponse 202 et GET /commandes/{id}/traitement
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TraitementCommandeDto {
+
+    private Long id;
+    private String numCommande;
+    private StatutCommande statut;
+    private EtatTraitement etatTraitement;
+    private String motifRejet;
+}
@@ -4,19 +4,30 @@ import jakarta.persistence.*;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
 @Entity
-@Table(name = "adresses")
+// Empreinte unique : une même adresse (normalisée) n'existe qu'une fois
+@Table(name = "adresses", indexes = {
+        @Index(name = "uk_adresses_empreinte", columnList = "empreinte", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Adresse {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "adresses_seq")
+    @SequenceGenerator(name = "adresses_seq", sequenceName = "adresses_seq", allocationSize = 50)
     private Long id;
     private int numeroRue;
 
@@ -27,4 +38,35 @@ public class Adresse {
     private String codePostal;
 
     private String pays;
+
+    // SHA-256 des champs normalisés (rétro-calculé par V1_2__adresses_empreinte.sql)
+    @Column(length = 64)
+    private String empreinte;
+
+    public Adresse(Long id, int numeroRue, String rue, String ville, String codePostal, String pays) {
+        this(id, numeroRue, rue, ville, codePostal, pays, null);
+    }
+
+    @PrePersist
+    void avantInsertion() {
+        if (empreinte == null) {
+            empreinte = calculerEmpreinte();
+        }
+    }
+
+    // Casse, espaces en trop et espaces de bord ignorés
+    public String calculerEmpreinte() {
+        String normalisee = String.join("|", String.valueOf(numeroRue),
+                normaliser(rue), normaliser(ville), normaliser(codePostal), normaliser(pays));
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(normalisee.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    private static String normaliser(String valeur) {
+        return valeur == null ? "" : valeur.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
 }
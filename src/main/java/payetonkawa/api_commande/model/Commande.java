@@ -2,31 +2,52 @@ package payetonkawa.api_commande.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Entity
-@Table(name = "commandes")
+// Index alignés sur la pagination keyset (dateCreation, id) et ses filtres
+@Table(name = "commandes", indexes = {
+        @Index(name = "idx_commandes_date_id", columnList = "dateCreation, id"),
+        @Index(name = "idx_commandes_client_date_id", columnList = "idClient, dateCreation, id"),
+        @Index(name = "idx_commandes_statut_date_id", columnList = "statut, dateCreation, id"),
+        @Index(name = "idx_commandes_etat_traitement", columnList = "etatTraitement, dateCreation")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Commande {
 
+    // Séquence allouée par blocs (optimiseur pooled) : contrairement à IDENTITY,
+    // permet à Hibernate de regrouper les INSERT en batch JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "commandes_seq")
+    @SequenceGenerator(name = "commandes_seq", sequenceName = "commandes_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
     private String numCommande;
 
+    // Verrou optimiste, exposé comme ETag : incrémenté à chaque modification de la
+    // commande ou de ses lignes. Null tant que la commande n'est pas persistée.
+    @Version
+    private Long version;
+
     @Column(nullable = false)
     private LocalDateTime dateCreation = LocalDateTime.now();
 
+    // Dernière modification des lignes ; null si jamais modifiées
+    private LocalDateTime dateModification;
+
     @Column(nullable = false)
     private Long idClient;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    // Adresse partagée entre commandes : pas de suppression en cascade
+    @ManyToOne(cascade = { CascadeType.PERSIST, CascadeType.MERGE }, fetch = FetchType.LAZY)
     @JoinColumn(name = "adresse_livraison_id", nullable = false)
     private Adresse adresseLivraison;
 
@@ -34,31 +55,81 @@ public class Commande {
     @Column(nullable = false)
     private StatutCommande statut = StatutCommande.EN_ATTENTE;
 
+    // Chargées par lots pour toutes les commandes d'une page (pas une requête par commande)
     @OneToMany(mappedBy = "commande", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 100)
     private List<LigneCommande> lignes = new ArrayList<>();
 
-    @Column(nullable = false)
-    private BigDecimal montantTotal = BigDecimal.ZERO;
+    // Tenu à jour ligne par ligne (ajouterLigne, modifierLigne, supprimerLigne...)
+    @Column(nullable = false, scale = Montants.ECHELLE)
+    private BigDecimal montantTotal = Montants.ZERO;
+
+    // Mode asynchrone uniquement (null pour une commande créée de façon synchrone)
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private EtatTraitement etatTraitement;
+
+    private int tentativesTraitement;
+
+    // Dernière erreur de traitement, motif du rejet une fois REJETEE
+    @Column(length = 500)
+    private String motifRejet;
 
+    // Le total est ajusté du seul montant de la ligne : O(1), quel que soit le nombre de lignes
     public void ajouterLigne(LigneCommande ligne) {
         ligne.setCommande(this);
-        ligne.calculerMontant();
         lignes.add(ligne);
-        recalculerMontantTotal();
+        ajusterMontantTotal(null, ligne.getMontant());
     }
 
     public void supprimerLigne(LigneCommande ligne) {
-        lignes.remove(ligne);
+        if (lignes.remove(ligne)) {
+            ajusterMontantTotal(ligne.getMontant(), null);
+        }
         ligne.setCommande(null);
-        recalculerMontantTotal();
     }
 
+    // Retire en un passage les lignes qui satisfont le filtre ; retourne true si une ligne a été retirée
+    public boolean supprimerLignesSi(Predicate<LigneCommande> filtre) {
+        return lignes.removeIf(ligne -> {
+            if (!filtre.test(ligne)) {
+                return false;
+            }
+            ajusterMontantTotal(ligne.getMontant(), null);
+            ligne.setCommande(null);
+            return true;
+        });
+    }
+
+    // Toute modification d'une ligne de la commande (quantité, prix...) passe par ici pour
+    // que le total suive l'écart de son montant. N'accède pas à la liste des lignes :
+    // utilisable sans la charger.
+    public void modifierLigne(LigneCommande ligne, Consumer<LigneCommande> modification) {
+        BigDecimal avant = ligne.getMontant();
+        modification.accept(ligne);
+        ajusterMontantTotal(avant, ligne.getMontant());
+    }
+
+    // Reconstruction complète, à partir des montants déjà calculés des lignes
     public void recalculerMontantTotal() {
-        this.montantTotal = lignes.stream()
-                .peek(LigneCommande::calculerMontant)
-                .map(LigneCommande::getMontant)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal total = BigDecimal.ZERO;
+        for (LigneCommande ligne : lignes) {
+            if (ligne.getMontant() != null) {
+                total = total.add(ligne.getMontant());
+            }
+        }
+        this.montantTotal = Montants.arrondir(total);
+    }
+
+    private void ajusterMontantTotal(BigDecimal avant, BigDecimal apres) {
+        BigDecimal total = montantTotal != null ? montantTotal : BigDecimal.ZERO;
+        if (apres != null) {
+            total = total.add(apres);
+        }
+        if (avant != null) {
+            total = total.subtract(avant);
+        }
+        this.montantTotal = Montants.arrondir(total);
     }
 
 }
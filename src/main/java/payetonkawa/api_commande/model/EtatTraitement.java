@@ -0,0 +1,8 @@
+package payetonkawa.api_commande.model;
+
+// Avancement d'une commande soumise en mode asynchrone (Prefer: respond-async)
+public enum EtatTraitement {
+    A_TRAITER,
+    ACCEPTEE,
+    REJETEE
+}
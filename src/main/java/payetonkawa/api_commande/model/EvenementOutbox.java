@@ -0,0 +1,50 @@
+package payetonkawa.api_commande.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.Length;
+import java.time.LocalDateTime;
+
+// Événement à publier sur RabbitMQ, écrit dans la même transaction que la commande
+@Entity
+@Table(name = "outbox_evenements", indexes = @Index(name = "idx_outbox_a_envoyer", columnList = "dateEnvoi, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EvenementOutbox {
+
+    // Séquence pooled (cf. V3__outbox_sequence.sql) : INSERT groupés en batch JDBC
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_evenements_seq")
+    @SequenceGenerator(name = "outbox_evenements_seq", sequenceName = "outbox_evenements_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String routingKey;
+
+    // Type Java du payload (en-tête __TypeId__ attendu par Jackson2JsonMessageConverter)
+    @Column(nullable = false)
+    private String typePayload;
+
+    @Column(nullable = false, length = Length.LONG32)
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime dateCreation = LocalDateTime.now();
+
+    // null tant que le broker n'a pas confirmé la publication
+    private LocalDateTime dateEnvoi;
+
+    private int tentatives;
+
+    // Pas de publication avant cette date : bail pendant l'attente de la confirmation,
+    // puis délai de réessai, croissant avec les tentatives, après un nack
+    private LocalDateTime prochainEssai;
+
+    // Mis de côté après outbox.relais.tentatives-max échecs : plus jamais relayé
+    // automatiquement (à republier à la main en remettant la colonne à null)
+    private LocalDateTime dateAbandon;
+
+    @Column(length = 500)
+    private String derniereErreur;
+}
@@ -14,7 +14,8 @@ import java.math.BigDecimal;
 public class LigneCommande {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ligne_commande_seq")
+    @SequenceGenerator(name = "ligne_commande_seq", sequenceName = "ligne_commande_seq", allocationSize = 50)
     private Long id;
 
     private Long produitId;
@@ -24,12 +25,18 @@ public class LigneCommande {
     @Setter(AccessLevel.NONE)
     private Integer quantite;
 
+    // Arrondi au centime comme le montant (même échelle que la colonne) : une ligne relue
+    // vérifie toujours prixUnitaire × quantite = montant
     @Setter(AccessLevel.NONE)
+    @Column(scale = Montants.ECHELLE)
     private BigDecimal prixUnitaire;
 
+    // Arrondi au centime ; la modification d'une ligne déjà rattachée à une commande
+    // passe par Commande.modifierLigne pour que le total suive
+    @Column(scale = Montants.ECHELLE)
     private BigDecimal montant;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "commande_id")
     private Commande commande;
 
@@ -39,21 +46,22 @@ public class LigneCommande {
     }
 
     public void setPrixUnitaire(BigDecimal prixUnitaire) {
-        this.prixUnitaire = prixUnitaire;
+        this.prixUnitaire = prixUnitaire != null ? Montants.arrondir(prixUnitaire) : null;
         calculerMontant();
     }
 
     public void calculerMontant() {
         try {
             if (prixUnitaire != null && quantite != null && quantite > 0) {
-                montant = prixUnitaire.multiply(BigDecimal.valueOf(quantite));
+                montant = Montants.arrondir(prixUnitaire.multiply(BigDecimal.valueOf(quantite)));
             } else {
-                log.warn("Impossible de calculer le montant: prixUnitaire={}, quantite={}", prixUnitaire, quantite);
-                montant = BigDecimal.ZERO;
+                // Cas normal tant que le prix n'est pas connu (commande acceptée en asynchrone)
+                log.debug("Montant non calculable: prixUnitaire={}, quantite={}", prixUnitaire, quantite);
+                montant = Montants.ZERO;
             }
         } catch (Exception e) {
             log.error("Erreur lors du calcul du montant", e);
-            montant = BigDecimal.ZERO;
+            montant = Montants.ZERO;
         }
 
     }
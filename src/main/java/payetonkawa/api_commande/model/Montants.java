@@ -0,0 +1,21 @@
+package payetonkawa.api_commande.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Montants en euros : deux décimales (l'échelle des colonnes numeric), arrondi commercial.
+// Arrondir en mémoire comme en base garantit qu'un total relu est égal au centime près.
+public final class Montants {
+
+    public static final int ECHELLE = 2;
+    public static final RoundingMode ARRONDI = RoundingMode.HALF_UP;
+
+    public static final BigDecimal ZERO = BigDecimal.ZERO.setScale(ECHELLE);
+
+    private Montants() {
+    }
+
+    public static BigDecimal arrondir(BigDecimal montant) {
+        return montant == null ? ZERO : montant.setScale(ECHELLE, ARRONDI);
+    }
+}
@@ -5,12 +5,27 @@ import payetonkawa.api_commande.model.Adresse;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface AdresseRepository extends JpaRepository<Adresse, Long> {
-    Optional<Adresse> findByNumeroRueAndRueAndVilleAndCodePostalAndPays(
-        int numeroRue,
-        String rue,
-        String ville,
-        String codePostal,
-        String pays);
+    // Insertion sans course possible : en cas de conflit sur l'empreinte, rien n'est
+    // inséré et aucun id n'est retourné (la ligne existante est alors relue).
+    // Si la même empreinte est en cours d'insertion par une transaction non validée,
+    // l'appel attend qu'elle se termine avant de trancher.
+    @Query(value = """
+            INSERT INTO adresses (id, numero_rue, rue, ville, code_postal, pays, empreinte)
+            VALUES (nextval('adresses_seq'), :numeroRue, :rue, :ville, :codePostal, :pays, :empreinte)
+            ON CONFLICT (empreinte) DO NOTHING
+            RETURNING id""", nativeQuery = true)
+    Optional<Long> insererSiAbsente(
+        @Param("numeroRue") int numeroRue,
+        @Param("rue") String rue,
+        @Param("ville") String ville,
+        @Param("codePostal") String codePostal,
+        @Param("pays") String pays,
+        @Param("empreinte") String empreinte);
+
+    @Query("select a.id from Adresse a where a.empreinte = :empreinte")
+    Optional<Long> findIdByEmpreinte(@Param("empreinte") String empreinte);
 }
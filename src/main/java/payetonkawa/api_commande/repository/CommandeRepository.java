@@ -1,17 +1,78 @@
 package payetonkawa.api_commande.repository;
 
 import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.EtatTraitement;
+import payetonkawa.api_commande.model.StatutCommande;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
-public interface CommandeRepository extends JpaRepository<Commande, Long> {
+public interface CommandeRepository extends JpaRepository<Commande, Long>, JpaSpecificationExecutor<Commande> {
 
     // rechercher une commande par son numéro unique
     Optional<Commande> findByNumCommande(String numCommande);
 
+    // Numéros déjà attribués parmi ceux d'un import
+    @Query("select c.numCommande from Commande c where c.numCommande in :numeros")
+    Set<String> findNumCommandesExistants(@Param("numeros") Collection<String> numeros);
+
+    // Lignes et adresse chargées dans la même requête que la commande
+    @Override
+    @EntityGraph(attributePaths = { "adresseLivraison", "lignes" })
+    Optional<Commande> findById(Long id);
+
+    @EntityGraph(attributePaths = { "adresseLivraison", "lignes" })
     List<Commande> findByIdClient(Long idClient);
+
+    // Revalidation ETag (If-None-Match) : la version seule, ni lignes ni adresse
+    @Query("select c.version from Commande c where c.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select c.version from Commande c where c.id = :id and c.idClient = :idClient")
+    Optional<Long> findVersionByIdAndIdClient(@Param("id") Long id, @Param("idClient") Long idClient);
+
+    // Export : lecture par curseur JDBC (fetch size), entités en lecture seule.
+    // Le Stream doit être consommé dans une transaction puis fermé.
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select c from Commande c join fetch c.adresseLivraison
+            where (:statut is null or c.statut = :statut)
+              and (:dateDebut is null or c.dateCreation >= :dateDebut)
+              and (:dateFin is null or c.dateCreation < :dateFin)
+            order by c.id""")
+    Stream<Commande> streamPourExport(@Param("statut") StatutCommande statut,
+            @Param("dateDebut") LocalDateTime dateDebut,
+            @Param("dateFin") LocalDateTime dateFin);
+
+    // Commande asynchrone verrouillée pour le worker qui la traite ; SKIP LOCKED (timeout -2) :
+    // vide si un autre worker ou une autre instance la traite déjà
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select c from Commande c where c.id = :id and c.etatTraitement = :etat")
+    Optional<Commande> findATraiter(@Param("id") Long id, @Param("etat") EtatTraitement etat);
+
+    // Commandes asynchrones restées en attente (file pleine, redémarrage, échec transitoire)
+    @Query("select c.id from Commande c where c.etatTraitement = :etat and c.dateCreation < :avant order by c.id")
+    List<Long> findIdsEnAttente(@Param("etat") EtatTraitement etat, @Param("avant") LocalDateTime avant,
+            Pageable pageable);
 }
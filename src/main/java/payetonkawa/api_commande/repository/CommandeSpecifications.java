@@ -0,0 +1,52 @@
+package payetonkawa.api_commande.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import jakarta.persistence.criteria.JoinType;
+
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.StatutCommande;
+
+// Filtres du listing des commandes, composés par CommandeService
+public final class CommandeSpecifications {
+
+    private CommandeSpecifications() {
+    }
+
+    // Adresse jointe dans la requête de la page ; pas de fetch join sur les lignes,
+    // qui forcerait Hibernate à paginer en mémoire (elles sont chargées par lots)
+    public static Specification<Commande> avecAdresse() {
+        return (root, query, cb) -> {
+            if (!Long.class.equals(query.getResultType())) {
+                root.fetch("adresseLivraison", JoinType.LEFT);
+            }
+            return null;
+        };
+    }
+
+    public static Specification<Commande> statut(StatutCommande statut) {
+        return (root, query, cb) -> cb.equal(root.get("statut"), statut);
+    }
+
+    public static Specification<Commande> idClient(Long idClient) {
+        return (root, query, cb) -> cb.equal(root.get("idClient"), idClient);
+    }
+
+    public static Specification<Commande> creeeDepuis(LocalDateTime debut) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("dateCreation"), debut);
+    }
+
+    public static Specification<Commande> creeeAvant(LocalDateTime fin) {
+        return (root, query, cb) -> cb.lessThan(root.get("dateCreation"), fin);
+    }
+
+    // Keyset sur (dateCreation, id) décroissants : commandes situées après le curseur
+    public static Specification<Commande> apres(LocalDateTime dateCreation, Long id) {
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get("dateCreation"), dateCreation),
+                cb.and(cb.equal(root.get("dateCreation"), dateCreation),
+                        cb.lessThan(root.get("id"), id)));
+    }
+}
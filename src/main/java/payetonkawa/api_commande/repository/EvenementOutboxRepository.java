@@ -0,0 +1,52 @@
+package payetonkawa.api_commande.repository;
+
+import payetonkawa.api_commande.model.EvenementOutbox;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EvenementOutboxRepository extends JpaRepository<EvenementOutbox, Long> {
+
+    // Prochain lot à publier ; SKIP LOCKED (timeout -2) pour que plusieurs instances
+    // puissent relayer en parallèle sans se bloquer ni publier deux fois le même lot
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("""
+            select e from EvenementOutbox e
+            where e.dateEnvoi is null and e.dateAbandon is null
+                and (e.prochainEssai is null or e.prochainEssai <= :maintenant)
+            order by e.id""")
+    List<EvenementOutbox> findAEnvoyer(@Param("maintenant") LocalDateTime maintenant, Pageable pageable);
+
+    @Modifying
+    @Query("update EvenementOutbox e set e.dateEnvoi = :dateEnvoi, e.prochainEssai = null where e.id in :ids")
+    int marquerEnvoyes(@Param("ids") Collection<Long> ids, @Param("dateEnvoi") LocalDateTime dateEnvoi);
+
+    // Événements réservés mais pas publiés : de nouveau disponibles immédiatement
+    @Modifying
+    @Query("update EvenementOutbox e set e.prochainEssai = null where e.id in :ids and e.dateEnvoi is null")
+    int libererBail(@Param("ids") Collection<Long> ids);
+
+    // Profondeur de l'outbox : événements pas encore confirmés par le broker
+    long countByDateEnvoiIsNullAndDateAbandonIsNull();
+
+    long countByDateEnvoiIsNullAndDateAbandonIsNotNull();
+
+    @Modifying
+    @Query("delete from EvenementOutbox e where e.dateEnvoi < :limite")
+    int deleteEnvoyesAvant(@Param("limite") LocalDateTime limite);
+}
@@ -3,11 +3,18 @@ package payetonkawa.api_commande.repository;
 import payetonkawa.api_commande.model.LigneCommande;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface LigneCommandeRepository extends JpaRepository<LigneCommande, Long> {
     List<LigneCommande> findByCommandeId(Long commandeId);
+
+    // Une ligne et sa commande en une requête, sans les autres lignes
+    @Query("select l from LigneCommande l join fetch l.commande where l.id = :id and l.commande.id = :commandeId")
+    Optional<LigneCommande> findAvecCommande(@Param("id") Long id, @Param("commandeId") Long commandeId);
 }
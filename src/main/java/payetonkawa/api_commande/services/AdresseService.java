@@ -0,0 +1,85 @@
+package payetonkawa.api_commande.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.repository.AdresseRepository;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdresseService {
+
+    private final AdresseRepository adresseRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${adresses.cache.taille-max:50000}")
+    private long tailleMaxCache;
+
+    // empreinte -> id : un client qui revient ne déclenche aucune requête de recherche
+    private Cache<String, Long> idsParEmpreinte;
+
+    @PostConstruct
+    public void init() {
+        idsParEmpreinte = Caffeine.newBuilder()
+                .maximumSize(tailleMaxCache)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, idsParEmpreinte, "adresses");
+    }
+
+    // Retourne une référence vers l'adresse existante ou nouvellement insérée.
+    // L'insertion passe par un INSERT ... ON CONFLICT DO NOTHING sur l'empreinte
+    // unique : deux créations concurrentes de la même adresse n'en produisent qu'une.
+    @Transactional
+    public Adresse trouverOuCreer(Adresse a) {
+        if (a == null) {
+            throw new RuntimeException("Adresse ne peut pas être null");
+        }
+
+        String empreinte = a.calculerEmpreinte();
+        Long id = idsParEmpreinte.getIfPresent(empreinte);
+        if (id == null) {
+            id = inserer(a, empreinte);
+        }
+        return adresseRepository.getReferenceById(id);
+    }
+
+    private Long inserer(Adresse a, String empreinte) {
+        Long insere = adresseRepository.insererSiAbsente(a.getNumeroRue(), a.getRue(), a.getVille(),
+                a.getCodePostal(), a.getPays(), empreinte).orElse(null);
+        if (insere == null) {
+            // Conflit : la ligne existante est déjà validée en base
+            Long existant = adresseRepository.findIdByEmpreinte(empreinte)
+                    .orElseThrow(() -> new RuntimeException("Adresse introuvable après conflit d'insertion"));
+            idsParEmpreinte.put(empreinte, existant);
+            return existant;
+        }
+
+        log.debug("Nouvelle adresse {} insérée", insere);
+        // Mise en cache seulement après commit : un rollback ne doit pas laisser un id fantôme
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    idsParEmpreinte.put(empreinte, insere);
+                }
+            });
+        } else {
+            idsParEmpreinte.put(empreinte, insere);
+        }
+        return insere;
+    }
+}
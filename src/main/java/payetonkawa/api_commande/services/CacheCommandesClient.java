@@ -0,0 +1,77 @@
+package payetonkawa.api_commande.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import payetonkawa.api_commande.dto.CommandeDto;
+
+// Commandes par client (GET /clients/{id}/commandes, interrogé en boucle par la boutique).
+// Invalidées après commit de chaque écriture sur l'instance qui l'a faite, et sur les
+// autres instances à réception des événements commande.* (CommandeEvenementsListener).
+// Le TTL ne sert que de filet si un événement se perd.
+@Component
+public class CacheCommandesClient implements MeterBinder {
+
+    private final Cache<Long, List<CommandeDto>> commandesParClient;
+
+    public CacheCommandesClient(
+            @Value("${commandes.cache.client.taille-max:10000}") long tailleMax,
+            @Value("${commandes.cache.client.ttl:5m}") Duration ttl) {
+        this.commandesParClient = Caffeine.newBuilder()
+                .maximumSize(tailleMax)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    // Un seul chargement par client à la fois, les requêtes concurrentes l'attendent.
+    // Une invalidation pendant un chargement attend sa fin puis le retire.
+    public List<CommandeDto> get(Long idClient, Function<Long, List<CommandeDto>> chargement) {
+        return commandesParClient.get(idClient, chargement);
+    }
+
+    public void invalider(Long idClient) {
+        if (idClient != null) {
+            commandesParClient.invalidate(idClient);
+        }
+    }
+
+    // Invalider avant le commit laisserait une lecture concurrente remettre en cache
+    // l'état antérieur à l'écriture
+    public void invaliderApresCommit(Long idClient) {
+        if (idClient == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalider(idClient);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalider(idClient);
+            }
+        });
+    }
+
+    public void vider() {
+        commandesParClient.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, commandesParClient, "commandes-client");
+    }
+}
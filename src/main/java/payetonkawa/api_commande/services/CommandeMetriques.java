@@ -0,0 +1,83 @@
+package payetonkawa.api_commande.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Métriques du pipeline de commande, exposées via /actuator/prometheus :
+// - commandes.etape{operation, etape, issue} : durée de chaque étape (histogramme)
+// - commandes.echecs{operation, etape, raison} : échecs par étape et type d'erreur
+// - commandes.stock.rejets{operation} : commandes refusées faute de stock
+// - commandes.lignes : nombre de lignes par commande créée
+// Les appels à l'API Produits ont leur propre timer (produits.client.appels).
+@Component
+public class CommandeMetriques {
+
+    private final MeterRegistry registry;
+    private final DistributionSummary lignesParCommande;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public CommandeMetriques(MeterRegistry registry) {
+        this.registry = registry;
+        this.lignesParCommande = DistributionSummary.builder("commandes.lignes")
+                .description("Nombre de lignes par commande créée")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public <T> T mesurer(String operation, String etape, Supplier<T> action) {
+        Timer.Sample debut = Timer.start(registry);
+        String issue = "succes";
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            issue = "echec";
+            echec(operation, etape, e);
+            throw e;
+        } finally {
+            debut.stop(timer(operation, etape, issue));
+        }
+    }
+
+    public void executer(String operation, String etape, Runnable action) {
+        mesurer(operation, etape, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public void lignes(int nombre) {
+        lignesParCommande.record(nombre);
+    }
+
+    public void rejetStock(String operation) {
+        registry.counter("commandes.stock.rejets", "operation", operation).increment();
+    }
+
+    private void echec(String operation, String etape, RuntimeException e) {
+        registry.counter("commandes.echecs", "operation", operation, "etape", etape,
+                "raison", e.getClass().getSimpleName()).increment();
+        // Réservation refusée par l'API Produits (409)
+        if (e.getCause() instanceof HttpClientErrorException.Conflict) {
+            rejetStock(operation);
+        }
+    }
+
+    private Timer timer(String operation, String etape, String issue) {
+        return timers.computeIfAbsent(operation + '|' + etape + '|' + issue, cle -> Timer.builder("commandes.etape")
+                .description("Durée des étapes de création / mise à jour de commande")
+                .tag("operation", operation)
+                .tag("etape", etape)
+                .tag("issue", issue)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
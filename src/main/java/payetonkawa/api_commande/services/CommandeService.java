@@ -3,25 +3,42 @@ package payetonkawa.api_commande.services;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import payetonkawa.api_commande.dto.AdresseDto;
 import payetonkawa.api_commande.dto.CommandeDto;
 import payetonkawa.api_commande.dto.LigneCommandeDto;
+import payetonkawa.api_commande.dto.PageCommandesDto;
 import payetonkawa.api_commande.dto.ProductDto;
+import payetonkawa.api_commande.dto.TraitementCommandeDto;
 import payetonkawa.api_commande.model.*;
-import payetonkawa.api_commande.repository.AdresseRepository;
 import payetonkawa.api_commande.repository.CommandeRepository;
+import payetonkawa.api_commande.repository.CommandeSpecifications;
+import payetonkawa.api_commande.repository.LigneCommandeRepository;
+import payetonkawa.api_commande.services.ProduitClient.PreparationCommande;
 
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.Map;
 
@@ -31,188 +48,216 @@ import java.util.Map;
 public class CommandeService {
 
     private final CommandeRepository repository;
-    private final AdresseRepository adresseRepository;
-    private final RabbitTemplate rabbitTemplate;
+    private final LigneCommandeRepository ligneRepository;
+    private final AdresseService adresseService;
     private final ProduitClient produitClient;
+    private final OutboxService outboxService;
+    private final NumCommandeGenerator numCommandeGenerator;
+    private final CommandeMetriques metriques;
+    private final CacheCommandesClient cacheClients;
 
-    @Value("${rabbitmq.commandes.exchange}")
-    private String exchange;
+    private static final String CREATE = "create";
+    private static final String UPDATE = "update";
+    private static final String ACCEPTATION = "acceptation";
+    private static final String TRAITEMENT = "traitement";
+
+    private static final Sort TRI_KEYSET = Sort.by(Sort.Direction.DESC, "dateCreation", "id");
+
+    @Value("${commandes.pagination.taille-defaut:20}")
+    private int tailleDefautPage;
+
+    @Value("${commandes.pagination.taille-max:100}")
+    private int tailleMaxPage;
+
+    // 1 payload tracé sur N en DEBUG (0 : jamais)
+    @Value("${commandes.log.payload.echantillon:100}")
+    private int echantillonPayload;
+
+    private final AtomicLong compteurPayload = new AtomicLong();
+
+    // Mode asynchrone : essais avant rejet d'une commande en échec transitoire
+    @Value("${commandes.async.tentatives-max:5}")
+    private int tentativesMaxTraitement;
 
     @Transactional
     public CommandeDto create(CommandeDto dto) {
-        log.info("Tentative de création de commande DTO: {}", dto);
+        tracerPayload("Création de commande, DTO reçu: {}", dto);
 
-        validateCommandeDto(dto);
+        // Validation complète avant tout appel externe
+        Map<Long, Integer> quantitesParProduit = metriques.mesurer(CREATE, "validation", () -> validerCreation(dto));
 
-        Commande c = new Commande();
+        Commande c = nouvelleCommande(dto);
 
-        // Générer numéro de commande si absent
-        if (dto.getNumCommande() == null || dto.getNumCommande().isEmpty()) {
-            c.setNumCommande(generateNumCommande());
-        } else {
-            c.setNumCommande(dto.getNumCommande());
-        }
+        Adresse adresseLivraison = metriques.mesurer(CREATE, "adresse",
+                () -> adresseService.trouverOuCreer(mapDtoToAdresse(dto.getAdresseLivraison())));
+        c.setAdresseLivraison(adresseLivraison);
 
-        c.setDateCreation(dto.getDateCreation() != null ? dto.getDateCreation() : LocalDateTime.now());
-        c.setIdClient(dto.getIdClient());
-        c.setStatut(dto.getStatut() != null ? dto.getStatut() : StatutCommande.EN_ATTENTE);
+        // Catalogue et réservation atomique du stock en parallèle : un seul aller-retour
+        // vers l'API Produits pour toute la commande (réservation annulée si la transaction échoue)
+        PreparationCommande preparation = metriques.mesurer(CREATE, "produits",
+                () -> preparer(quantitesParProduit));
+        Map<Long, ProductDto> produits = preparation.produits();
 
-        if (dto.getAdresseLivraison() == null) {
-            throw new RuntimeException("L'adresse de livraison est obligatoire");
-        }
+        remplirLignes(c, dto.getLignes(), produits);
 
-        Adresse adresseLivraison = findOrCreateAdresse(mapDtoToAdresse(dto.getAdresseLivraison()));
-        c.setAdresseLivraison(adresseLivraison);
+        // ===== SAUVEGARDE =====
+        Commande saved = metriques.mesurer(CREATE, "sauvegarde", () -> sauvegarder(c, preparation.reservationId()));
+        cacheClients.invaliderApresCommit(saved.getIdClient());
 
-        // lignes
-        BigDecimal total = BigDecimal.ZERO;
+        // Conversion pour retour
+        CommandeDto savedDto = metriques.mesurer(CREATE, "mapping", () -> mapToDto(saved));
+        journaliser("Commande créée", saved);
 
-        for (LigneCommandeDto ligneDto : dto.getLignes()) {
+        // ===== Événement RabbitMQ (outbox : publié par OutboxRelay après commit) =====
+        metriques.executer(CREATE, "outbox", () -> outboxService.enregistrer("commande.created", savedDto));
+        metriques.lignes(c.getLignes().size());
 
-            if (ligneDto.getProduitId() == null) {
-                throw new RuntimeException("produitId manquant dans une ligne");
-            }
+        return savedDto;
+    }
 
-            if (ligneDto.getQuantite() == null || ligneDto.getQuantite() <= 0) {
-                throw new RuntimeException("Quantité invalide pour le produit ID: " + ligneDto.getProduitId());
-            }
+    // Mode asynchrone : la commande est enregistrée telle quelle (EN_ATTENTE, sans prix) sans
+    // appeler l'API Produits ; TraitementCommandesService la complète ensuite via traiter()
+    @Transactional
+    public CommandeDto accepter(CommandeDto dto) {
+        tracerPayload("Commande asynchrone, DTO reçu: {}", dto);
 
-            // Récupération produit dans microservice produit
-            ProductDto produit = produitClient.getProduitById(ligneDto.getProduitId());
+        metriques.mesurer(ACCEPTATION, "validation", () -> validerCreation(dto));
 
-            // Vérification stock
-            if (produit.getStock() < ligneDto.getQuantite()) {
-                throw new RuntimeException("Stock insuffisant pour: " + produit.getName() +
-                        " (disponible: " + produit.getStock() + ", demandé: " + ligneDto.getQuantite() + ")");
-            }
+        Commande c = nouvelleCommande(dto);
+        c.setStatut(StatutCommande.EN_ATTENTE);
+        c.setEtatTraitement(EtatTraitement.A_TRAITER);
+        c.setAdresseLivraison(metriques.mesurer(ACCEPTATION, "adresse",
+                () -> adresseService.trouverOuCreer(mapDtoToAdresse(dto.getAdresseLivraison()))));
 
+        for (LigneCommandeDto ligneDto : dto.getLignes()) {
             LigneCommande ligne = new LigneCommande();
-            ligne.setCommande(c);
-            ligne.setProduitId(produit.getId());
-            ligne.setLibelleProduit(produit.getName());
+            ligne.setProduitId(ligneDto.getProduitId());
             ligne.setQuantite(ligneDto.getQuantite());
-            ligne.setPrixUnitaire(BigDecimal.valueOf(produit.getPrice()));
+            c.ajouterLigne(ligne);
+        }
 
-            ligne.calculerMontant();
-            total = total.add(ligne.getMontant());
-            produitClient.updateStock(produit.getId(), produit.getStock() - ligneDto.getQuantite());
+        Commande saved = metriques.mesurer(ACCEPTATION, "sauvegarde", () -> sauvegarder(c, null));
+        cacheClients.invaliderApresCommit(saved.getIdClient());
+        journaliser("Commande acceptée", saved);
+        return mapToDto(saved);
+    }
 
-            c.getLignes().add(ligne);
+    // Sans effet si la commande est déjà traitée ou en cours de traitement par un autre worker
+    @Transactional
+    public void traiter(Long id) {
+        Optional<Commande> aTraiter = repository.findATraiter(id, EtatTraitement.A_TRAITER);
+        if (aTraiter.isEmpty()) {
+            log.debug("Commande {} déjà traitée ou en cours de traitement", id);
+            return;
+        }
+        Commande c = aTraiter.get();
+
+        Map<Long, Integer> quantitesParProduit = c.getLignes().stream()
+                .collect(Collectors.toMap(LigneCommande::getProduitId, LigneCommande::getQuantite,
+                        Integer::sum, LinkedHashMap::new));
+        PreparationCommande preparation = metriques.mesurer(TRAITEMENT, "produits",
+                () -> preparer(quantitesParProduit));
+
+        for (LigneCommande ligne : c.getLignes()) {
+            ProductDto produit = getProduit(preparation.produits(), ligne.getProduitId());
+            c.modifierLigne(ligne, l -> {
+                l.setLibelleProduit(produit.getName());
+                l.setPrixUnitaire(produit.getPrice());
+            });
         }
-        c.setMontantTotal(total);
+        c.setEtatTraitement(EtatTraitement.ACCEPTEE);
+        c.setMotifRejet(null);
 
-        // ===== SAUVEGARDE =====
-        Commande saved = repository.save(c);
-        log.info("Commande enregistrée ID {}", saved.getId());
+        Commande saved = metriques.mesurer(TRAITEMENT, "sauvegarde", () -> sauvegarder(c, preparation.reservationId()));
+        cacheClients.invaliderApresCommit(saved.getIdClient());
+        CommandeDto savedDto = metriques.mesurer(TRAITEMENT, "mapping", () -> mapToDto(saved));
+        journaliser("Commande traitée", saved);
 
-        // Conversion pour retour
-        CommandeDto savedDto = mapToDto(saved);
-        log.info("Commande saved DTO: {}", savedDto);
+        metriques.executer(TRAITEMENT, "outbox", () -> outboxService.enregistrer("commande.created", savedDto));
+        metriques.lignes(c.getLignes().size());
+    }
 
-        // ===== Envoi RabbitMQ =====
-        try {
-            rabbitTemplate.convertAndSend(exchange, "commande.created", savedDto);
-            log.info("Message RabbitMQ envoyé pour la commande {}", saved.getId());
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi du message RabbitMQ", e);
+    // Échec définitif (produit inconnu, stock refusé...) : la commande est rejetée.
+    // Échec transitoire : elle reste à traiter, jusqu'à tentativesMaxTraitement essais.
+    @Transactional
+    public void enregistrerEchecTraitement(Long id, String motif, boolean definitif) {
+        repository.findATraiter(id, EtatTraitement.A_TRAITER).ifPresent(c -> {
+            c.setTentativesTraitement(c.getTentativesTraitement() + 1);
+            c.setMotifRejet(motif != null && motif.length() > 500 ? motif.substring(0, 500) : motif);
+            if (definitif || c.getTentativesTraitement() >= tentativesMaxTraitement) {
+                c.setEtatTraitement(EtatTraitement.REJETEE);
+                c.setStatut(StatutCommande.ANNULEE);
+                cacheClients.invaliderApresCommit(c.getIdClient());
+                log.warn("Commande {} rejetée après {} tentative(s) : {}", id, c.getTentativesTraitement(), motif);
+                outboxService.enregistrer("commande.rejected", mapToDto(c));
+            }
+        });
+    }
 
-        }
+    @Transactional(readOnly = true)
+    public TraitementCommandeDto getTraitement(Long id) {
+        Commande c = repository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Commande introuvable avec l'ID: " + id));
 
-        return savedDto;
+        // null : commande créée en mode synchrone, donc déjà acceptée
+        return new TraitementCommandeDto(c.getId(), c.getNumCommande(), c.getStatut(),
+                c.getEtatTraitement() != null ? c.getEtatTraitement() : EtatTraitement.ACCEPTEE,
+                c.getMotifRejet());
+    }
+
+    @Transactional(readOnly = true)
+    public List<Long> getCommandesEnAttenteDeTraitement(LocalDateTime avant, int limite) {
+        return repository.findIdsEnAttente(EtatTraitement.A_TRAITER, avant, PageRequest.of(0, limite));
     }
 
     @Transactional
     public CommandeDto update(Long id, CommandeDto dto) {
-        log.info("Tentative de mise à jour de la commande ID {} avec DTO: {}", id, dto);
+        return update(id, dto, null);
+    }
+
+    // versionAttendue (If-Match) : null pour ne pas conditionner la mise à jour. Une écriture
+    // concurrente survenue après ce contrôle est rejetée au flush par le verrou optimiste.
+    @Transactional
+    public CommandeDto update(Long id, CommandeDto dto, Long versionAttendue) {
+        tracerPayload("Mise à jour de commande, DTO reçu: {}", dto);
 
         // Récupérer la commande existante
-        Commande existing = repository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Commande introuvable avec l'ID: " + id));
+        Commande existing = metriques.mesurer(UPDATE, "chargement", () -> repository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Commande introuvable avec l'ID: " + id)));
+        // Avant toute réservation de stock
+        verifierVersion(existing, versionAttendue);
 
         if (dto.getNumCommande() != null && !dto.getNumCommande().isEmpty()) {
             existing.setNumCommande(dto.getNumCommande());
         }
+        // La commande peut changer de client : les deux listes sont à invalider
+        cacheClients.invaliderApresCommit(existing.getIdClient());
         existing.setIdClient(dto.getIdClient());
         existing.setStatut(dto.getStatut() != null ? dto.getStatut() : existing.getStatut());
 
         if (dto.getAdresseLivraison() != null) {
-            Adresse updatedLivraison = findOrCreateAdresse(mapDtoToAdresse(dto.getAdresseLivraison()));
+            Adresse updatedLivraison = metriques.mesurer(UPDATE, "adresse",
+                    () -> adresseService.trouverOuCreer(mapDtoToAdresse(dto.getAdresseLivraison())));
             existing.setAdresseLivraison(updatedLivraison);
         }
 
-        Map<Long, LigneCommande> existingLinesMap = existing.getLignes().stream()
-                .collect(Collectors.toMap(LigneCommande::getId, l -> l));
-
-        List<LigneCommande> finalLines = new ArrayList<>();
-        BigDecimal total = BigDecimal.ZERO;
-
-        for (LigneCommandeDto ligneDto : dto.getLignes()) {
-
-            if (ligneDto.getProduitId() == null) {
-                throw new RuntimeException("produitId manquant dans une ligne");
-            }
-            if (ligneDto.getQuantite() == null || ligneDto.getQuantite() <= 0) {
-                throw new RuntimeException("Quantité invalide pour le produit ID: " + ligneDto.getProduitId());
-            }
-
-            // Récupération produit et vérification stock
-            ProductDto produit = produitClient.getProduitById(ligneDto.getProduitId());
-            if (produit.getStock() < ligneDto.getQuantite()) {
-                throw new RuntimeException("Stock insuffisant pour: " + produit.getName());
-            }
-
-            LigneCommande ligne;
-
-            if (ligneDto.getId() != null && existingLinesMap.containsKey(ligneDto.getId())) {
-                ligne = existingLinesMap.get(ligneDto.getId());
-                ligne.setQuantite(ligneDto.getQuantite());
-                ligne.setProduitId(ligneDto.getProduitId());
-
-                if (ligneDto.getPrixUnitaire() != null) {
-                    ligne.setPrixUnitaire(ligneDto.getPrixUnitaire());
-                } else {
-                    ligne.setPrixUnitaire(BigDecimal.valueOf(produit.getPrice()));
-                }
-
-                ligne.setLibelleProduit(produit.getName());
-
-            } else {
-                // NOUVELLE LIGNE
-                ligne = new LigneCommande();
-                ligne.setCommande(existing);
-                ligne.setProduitId(produit.getId());
-                ligne.setLibelleProduit(produit.getName());
-                ligne.setQuantite(ligneDto.getQuantite());
-                ligne.setPrixUnitaire(BigDecimal.valueOf(produit.getPrice()));
-            }
-
-            // Lier ligne à la commande et calcul montant
-            ligne.setCommande(existing);
-            ligne.calculerMontant();
-            total = total.add(ligne.getMontant());
-
-            // Mettre à jour le stock
-            produitClient.updateStock(produit.getId(), produit.getStock() - ligneDto.getQuantite());
-
-            finalLines.add(ligne);
-        }
-
-        existing.getLignes().clear();
-        existing.getLignes().addAll(finalLines);
+        List<LigneCommandeDto> lignesDto = dto.getLignes();
+        DiffLignes diff = metriques.mesurer(UPDATE, "validation", () -> {
+            lignesDto.forEach(this::validateLigneDto);
+            return comparerLignes(existing, lignesDto);
+        });
+        // Stock : seules les variations de quantité sont réservées ou restituées
+        PreparationCommande preparation = metriques.mesurer(UPDATE, "produits", () -> preparerModification(diff));
 
-        existing.setMontantTotal(total);
+        appliquerLignes(existing, lignesDto, preparation.produits());
 
-        Commande saved = repository.save(existing);
-        CommandeDto savedDto = mapToDto(saved);
-        log.info("Commande mise à jour DTO: {}", savedDto);
+        Commande saved = metriques.mesurer(UPDATE, "sauvegarde", () -> sauvegarder(existing, preparation.reservationId()));
+        cacheClients.invaliderApresCommit(saved.getIdClient());
+        CommandeDto savedDto = metriques.mesurer(UPDATE, "mapping", () -> mapToDto(saved));
+        journaliser("Commande mise à jour", saved);
 
-        //ENVOI RABBITMQ
-        try {
-            rabbitTemplate.convertAndSend(exchange, "commande.updated", savedDto);
-            log.info("Message RabbitMQ envoyé pour la commande {}", saved.getId());
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi du message RabbitMQ (update)", e);
-        }
+        //ÉVÉNEMENT RABBITMQ (outbox)
+        metriques.executer(UPDATE, "outbox", () -> outboxService.enregistrer("commande.updated", savedDto));
 
         return savedDto;
     }
@@ -222,24 +267,64 @@ public class CommandeService {
         Commande existing = repository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Commande introuvable avec l'ID: " + id));
 
+        CommandeDto dto = mapToDto(existing);
+
         repository.deleteById(id);
+        cacheClients.invaliderApresCommit(existing.getIdClient());
 
-        CommandeDto dto = mapToDto(existing);
+        outboxService.enregistrer("commande.deleted", dto);
+    }
 
-        try {
-            rabbitTemplate.convertAndSend(exchange, "commande.deleted", dto);
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi du message RabbitMQ (delete)", e);
+    // Listing paginé par curseur (keyset sur dateCreation, id décroissants) :
+    // le coût d'une page ne dépend pas de sa position dans la table
+    @Transactional(readOnly = true)
+    public PageCommandesDto lister(StatutCommande statut, Long idClient, LocalDateTime dateDebut,
+            LocalDateTime dateFin, String curseur, Integer taille) {
+        int limite = Math.min(taille != null && taille > 0 ? taille : tailleDefautPage, tailleMaxPage);
+
+        List<Specification<Commande>> filtres = new ArrayList<>();
+        filtres.add(CommandeSpecifications.avecAdresse());
+        if (statut != null) {
+            filtres.add(CommandeSpecifications.statut(statut));
         }
+        if (idClient != null) {
+            filtres.add(CommandeSpecifications.idClient(idClient));
+        }
+        if (dateDebut != null) {
+            filtres.add(CommandeSpecifications.creeeDepuis(dateDebut));
+        }
+        if (dateFin != null) {
+            filtres.add(CommandeSpecifications.creeeAvant(dateFin));
+        }
+        if (curseur != null && !curseur.isBlank()) {
+            Curseur position = decoderCurseur(curseur);
+            filtres.add(CommandeSpecifications.apres(position.dateCreation(), position.id()));
+        }
+
+        // Une commande de plus que demandé pour savoir s'il existe une page suivante
+        List<Commande> commandes = repository.findBy(Specification.allOf(filtres),
+                q -> q.sortBy(TRI_KEYSET).limit(limite + 1).all());
+
+        boolean pageSuivante = commandes.size() > limite;
+        List<Commande> page = pageSuivante ? commandes.subList(0, limite) : commandes;
+        String curseurSuivant = pageSuivante ? encoderCurseur(page.get(page.size() - 1)) : null;
+
+        return new PageCommandesDto(page.stream().map(this::mapToDto).toList(), curseurSuivant);
     }
 
-    public List<CommandeDto> all() {
-        return repository.findAll()
-                .stream()
-                .map(this::mapToDto)
-                .toList();
+    // Version courante pour un GET conditionnel ; vide si la commande n'existe pas
+    @Transactional(readOnly = true)
+    public Optional<Long> getVersion(Long id) {
+        return repository.findVersionById(id);
+    }
+
+    // Idem, vide aussi si la commande n'appartient pas au client
+    @Transactional(readOnly = true)
+    public Optional<Long> getVersion(Long clientId, Long commandeId) {
+        return repository.findVersionByIdAndIdClient(commandeId, clientId);
     }
 
+    @Transactional(readOnly = true)
     public CommandeDto getCommandeById(Long id) {
         Commande c = repository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Commande introuvable avec l'ID: " + id));
@@ -249,52 +334,126 @@ public class CommandeService {
 
     @Transactional
     public CommandeDto updateCommandeLignes(Long id, List<LigneCommandeDto> lignesDto) {
+        return updateCommandeLignes(id, lignesDto, null);
+    }
+
+    @Transactional
+    public CommandeDto updateCommandeLignes(Long id, List<LigneCommandeDto> lignesDto, Long versionAttendue) {
         Commande existing = repository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Commande introuvable avec l'ID: " + id));
+        verifierVersion(existing, versionAttendue);
 
-        Map<Long, LigneCommande> existingLinesMap = existing.getLignes().stream()
-                .collect(Collectors.toMap(LigneCommande::getId, l -> l));
+        lignesDto.forEach(this::validateLigneDto);
+        DiffLignes diff = comparerLignes(existing, lignesDto);
+        PreparationCommande preparation = preparerModification(diff);
 
-        List<LigneCommande> finalLines = new ArrayList<>();
+        appliquerLignes(existing, lignesDto, preparation.produits());
 
-        for (LigneCommandeDto ligneDto : lignesDto) {
-            if (ligneDto.getId() != null && existingLinesMap.containsKey(ligneDto.getId())) {
-                LigneCommande oldLine = existingLinesMap.get(ligneDto.getId());
-                oldLine.setQuantite(ligneDto.getQuantite());
-                oldLine.setPrixUnitaire(ligneDto.getPrixUnitaire());
-                oldLine.setProduitId(ligneDto.getProduitId());
-                oldLine.setLibelleProduit(ligneDto.getLibelleProduit());
-                oldLine.calculerMontant();
-                finalLines.add(oldLine);
-            } else {
-                LigneCommande newLine = new LigneCommande();
-                newLine.setCommande(existing);
-                newLine.setProduitId(ligneDto.getProduitId());
-                newLine.setLibelleProduit(ligneDto.getLibelleProduit());
-                newLine.setQuantite(ligneDto.getQuantite());
-                newLine.setPrixUnitaire(ligneDto.getPrixUnitaire());
-                newLine.calculerMontant();
-                finalLines.add(newLine);
-            }
-        }
+        // Flush avant le mapping : le DTO (et l'ETag) portent la version incrémentée
+        Commande updated = repository.saveAndFlush(existing);
+        cacheClients.invaliderApresCommit(updated.getIdClient());
+        CommandeDto dto = mapToDto(updated);
 
-        existing.getLignes().clear();
-        existing.getLignes().addAll(finalLines);
-        existing.recalculerMontantTotal();
+        // --- Événement RabbitMQ (outbox) ---
+        outboxService.enregistrer("commande.updated", dto);
 
-        Commande updated = repository.save(existing);
-        CommandeDto dto = mapToDto(updated);
+        return dto;
+    }
 
-        // --- Envoi message RabbitMQ ---
-        try {
-            rabbitTemplate.convertAndSend(exchange, "commande.updated", dto);
-        } catch (Exception e) {
-            log.error("Erreur lors de l'envoi du message RabbitMQ (update lignes)", e);
+    // PATCH d'une ligne : seules la ligne et sa commande sont lues puis écrites, et le total
+    // est ajusté de l'écart de la ligne. Champs absents : inchangés. Les autres lignes ne
+    // sont chargées (une requête) que pour la réponse et l'événement.
+    @Transactional
+    public CommandeDto updateLigne(Long commandeId, Long ligneId, LigneCommandeDto modification,
+            Long versionAttendue) {
+        LigneCommande ligne = ligneRepository.findAvecCommande(ligneId, commandeId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Ligne " + ligneId + " introuvable dans la commande " + commandeId));
+        Commande c = ligne.getCommande();
+        verifierVersion(c, versionAttendue);
+
+        // Même produit : libellé et prix conservés sauf s'ils sont fournis ; autre produit :
+        // complétés depuis le catalogue
+        Long produitId = modification.getProduitId() != null ? modification.getProduitId() : ligne.getProduitId();
+        boolean memeProduit = produitId.equals(ligne.getProduitId());
+        LigneCommandeDto cible = new LigneCommandeDto(ligne.getId(), produitId,
+                modification.getLibelleProduit() != null || !memeProduit
+                        ? modification.getLibelleProduit()
+                        : ligne.getLibelleProduit(),
+                modification.getQuantite() != null ? modification.getQuantite() : ligne.getQuantite(),
+                modification.getPrixUnitaire() != null || !memeProduit
+                        ? modification.getPrixUnitaire()
+                        : ligne.getPrixUnitaire(),
+                null);
+        validateLigneDto(cible);
+
+        if (!ligneModifiee(ligne, cible)) {
+            return mapToDto(c);
         }
 
+        Map<Long, Integer> variations = new HashMap<>();
+        variations.merge(ligne.getProduitId(), -ligne.getQuantite(), Integer::sum);
+        variations.merge(produitId, cible.getQuantite(), Integer::sum);
+        variations.values().removeIf(v -> v == 0);
+        DiffLignes diff = new DiffLignes(Set.of(produitId), variations);
+
+        PreparationCommande preparation = preparerModification(diff);
+
+        c.modifierLigne(ligne, l -> remplirLigne(l, cible, preparation.produits()));
+        c.setDateModification(LocalDateTime.now());
+
+        // Flush avant le mapping : le DTO (et l'ETag) portent la version incrémentée
+        repository.flush();
+        cacheClients.invaliderApresCommit(c.getIdClient());
+        CommandeDto dto = mapToDto(c);
+
+        outboxService.enregistrer("commande.updated", dto);
+
         return dto;
     }
 
+    // Validation d'une nouvelle commande ; retourne les quantités cumulées par produit
+    Map<Long, Integer> validerCreation(CommandeDto dto) {
+        validateCommandeDto(dto);
+        if (dto.getAdresseLivraison() == null) {
+            throw new RuntimeException("L'adresse de livraison est obligatoire");
+        }
+        dto.getLignes().forEach(this::validateLigneDto);
+        return quantitesParProduit(dto.getLignes());
+    }
+
+    Commande nouvelleCommande(CommandeDto dto) {
+        Commande c = new Commande();
+
+        // Générer numéro de commande si absent
+        if (dto.getNumCommande() == null || dto.getNumCommande().isEmpty()) {
+            c.setNumCommande(numCommandeGenerator.prochain());
+        } else {
+            c.setNumCommande(dto.getNumCommande());
+        }
+
+        c.setDateCreation(dto.getDateCreation() != null ? dto.getDateCreation() : LocalDateTime.now());
+        c.setIdClient(dto.getIdClient());
+        c.setStatut(dto.getStatut() != null ? dto.getStatut() : StatutCommande.EN_ATTENTE);
+        return c;
+    }
+
+    // Lignes d'une nouvelle commande au prix catalogue ; le total suit chaque ajout
+    void remplirLignes(Commande c, List<LigneCommandeDto> lignesDto, Map<Long, ProductDto> produits) {
+        for (LigneCommandeDto ligneDto : lignesDto) {
+            ProductDto produit = getProduit(produits, ligneDto.getProduitId());
+
+            LigneCommande ligne = new LigneCommande();
+            ligne.setProduitId(produit.getId());
+            ligne.setLibelleProduit(produit.getName());
+            // Prix d'abord : le montant n'est calculé qu'une fois, avec la quantité
+            ligne.setPrixUnitaire(produit.getPrice());
+            ligne.setQuantite(ligneDto.getQuantite());
+
+            c.ajouterLigne(ligne);
+        }
+    }
+
     private void validateCommandeDto(CommandeDto dto) {
         if (dto.getIdClient() == null) {
             throw new RuntimeException("idClient est obligatoire");
@@ -305,8 +464,235 @@ public class CommandeService {
         }
     }
 
-    private String generateNumCommande() {
-        return "CMD-" + System.currentTimeMillis();
+    private void validateLigneDto(LigneCommandeDto ligneDto) {
+        if (ligneDto.getProduitId() == null) {
+            throw new RuntimeException("produitId manquant dans une ligne");
+        }
+
+        if (ligneDto.getQuantite() == null || ligneDto.getQuantite() <= 0) {
+            throw new RuntimeException("Quantité invalide pour le produit ID: " + ligneDto.getProduitId());
+        }
+    }
+
+    private Map<Long, Integer> quantitesParProduit(List<LigneCommandeDto> lignesDto) {
+        return lignesDto.stream()
+                .collect(Collectors.toMap(LigneCommandeDto::getProduitId, LigneCommandeDto::getQuantite,
+                        Integer::sum, LinkedHashMap::new));
+    }
+
+    private void verifierVersion(Commande c, Long versionAttendue) {
+        if (versionAttendue != null && !versionAttendue.equals(c.getVersion())) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                    "La commande " + c.getId() + " a été modifiée (version courante: " + c.getVersion() + ")");
+        }
+    }
+
+    private ProductDto getProduit(Map<Long, ProductDto> produits, Long produitId) {
+        ProductDto produit = produits.get(produitId);
+        if (produit == null) {
+            throw new RuntimeException("Produit introuvable avec l'ID: " + produitId);
+        }
+        return produit;
+    }
+
+    // Différentiel entre les lignes en base et les lignes demandées : produits des lignes
+    // nouvelles ou modifiées (catalogue à lire), et variation de quantité par produit
+    private record DiffLignes(Set<Long> produitsModifies, Map<Long, Integer> variations) {
+
+        Map<Long, Integer> aReserver() {
+            return variations.entrySet().stream()
+                    .filter(e -> e.getValue() > 0)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        }
+    }
+
+    private DiffLignes comparerLignes(Commande c, List<LigneCommandeDto> lignesDto) {
+        Map<Long, LigneCommande> existantes = lignesParId(c);
+        Set<Long> produitsModifies = new HashSet<>();
+        Map<Long, Integer> variations = new HashMap<>();
+
+        c.getLignes().stream()
+                .filter(l -> l.getQuantite() != null)
+                .forEach(l -> variations.merge(l.getProduitId(), -l.getQuantite(), Integer::sum));
+        for (LigneCommandeDto ligneDto : lignesDto) {
+            variations.merge(ligneDto.getProduitId(), ligneDto.getQuantite(), Integer::sum);
+            LigneCommande existante = ligneDto.getId() != null ? existantes.get(ligneDto.getId()) : null;
+            if (existante == null || ligneModifiee(existante, ligneDto)) {
+                produitsModifies.add(ligneDto.getProduitId());
+            }
+        }
+        variations.values().removeIf(v -> v == 0);
+        return new DiffLignes(produitsModifies, variations);
+    }
+
+    private PreparationCommande preparerModification(DiffLignes diff) {
+        if (diff.produitsModifies().isEmpty() && diff.variations().isEmpty()) {
+            return new PreparationCommande(Map.of(), null);
+        }
+        PreparationCommande preparation = produitClient.preparerCommande(UUID.randomUUID().toString(),
+                diff.produitsModifies(), diff.variations());
+        annulerReservationSiRollback(preparation.reservationId());
+        return preparation;
+    }
+
+    // Lignes modifiées mises à jour sur place, nouvelles ajoutées, absentes retirées
+    // (orphanRemoval) : une ligne inchangée ne génère aucune requête. Le total suit
+    // l'écart de chaque ligne touchée.
+    private void appliquerLignes(Commande c, List<LigneCommandeDto> lignesDto, Map<Long, ProductDto> produits) {
+        Map<Long, LigneCommande> existantes = lignesParId(c);
+        Set<Long> conservees = new HashSet<>();
+        boolean modifiee = false;
+
+        for (LigneCommandeDto ligneDto : lignesDto) {
+            LigneCommande ligne = ligneDto.getId() != null ? existantes.get(ligneDto.getId()) : null;
+            if (ligne == null) {
+                LigneCommande nouvelle = new LigneCommande();
+                remplirLigne(nouvelle, ligneDto, produits);
+                c.ajouterLigne(nouvelle);
+                modifiee = true;
+            } else {
+                conservees.add(ligne.getId());
+                if (ligneModifiee(ligne, ligneDto)) {
+                    c.modifierLigne(ligne, l -> remplirLigne(l, ligneDto, produits));
+                    modifiee = true;
+                }
+            }
+        }
+        modifiee |= c.supprimerLignesSi(l -> l.getId() != null && !conservees.contains(l.getId()));
+
+        if (modifiee) {
+            // Une ligne modifiée seule ne rend pas la commande « sale » : sans cela sa
+            // version (l'ETag) ne serait pas incrémentée
+            c.setDateModification(LocalDateTime.now());
+        }
+    }
+
+    // Libellé et prix fournis conservés, sinon repris du catalogue
+    private void remplirLigne(LigneCommande ligne, LigneCommandeDto ligneDto, Map<Long, ProductDto> produits) {
+        ligne.setProduitId(ligneDto.getProduitId());
+        if (ligneDto.getPrixUnitaire() != null && ligneDto.getLibelleProduit() != null) {
+            ligne.setPrixUnitaire(ligneDto.getPrixUnitaire());
+            ligne.setLibelleProduit(ligneDto.getLibelleProduit());
+        } else {
+            ProductDto produit = getProduit(produits, ligneDto.getProduitId());
+            ligne.setPrixUnitaire(ligneDto.getPrixUnitaire() != null
+                    ? ligneDto.getPrixUnitaire()
+                    : produit.getPrice());
+            ligne.setLibelleProduit(ligneDto.getLibelleProduit() != null
+                    ? ligneDto.getLibelleProduit()
+                    : produit.getName());
+        }
+        ligne.setQuantite(ligneDto.getQuantite());
+    }
+
+    // Prix ou libellé absents de la demande : pas de changement sur ces champs
+    private static boolean ligneModifiee(LigneCommande ligne, LigneCommandeDto ligneDto) {
+        return !Objects.equals(ligne.getProduitId(), ligneDto.getProduitId())
+                || !Objects.equals(ligne.getQuantite(), ligneDto.getQuantite())
+                || (ligneDto.getPrixUnitaire() != null && (ligne.getPrixUnitaire() == null
+                        || ligneDto.getPrixUnitaire().compareTo(ligne.getPrixUnitaire()) != 0))
+                || (ligneDto.getLibelleProduit() != null
+                        && !ligneDto.getLibelleProduit().equals(ligne.getLibelleProduit()));
+    }
+
+    private static Map<Long, LigneCommande> lignesParId(Commande c) {
+        return c.getLignes().stream()
+                .filter(l -> l.getId() != null)
+                .collect(Collectors.toMap(LigneCommande::getId, l -> l));
+    }
+
+    private PreparationCommande preparer(Map<Long, Integer> quantitesParProduit) {
+        if (quantitesParProduit.isEmpty()) {
+            return new PreparationCommande(Map.of(), null);
+        }
+        PreparationCommande preparation = produitClient.preparerCommande(UUID.randomUUID().toString(),
+                quantitesParProduit);
+        annulerReservationSiRollback(preparation.reservationId());
+        return preparation;
+    }
+
+    // Une ligne de log par commande, limitée à un résumé : le DTO complet (toString
+    // Lombok sur chaque ligne et l'adresse) coûte cher sous charge. En JSON structuré
+    // (profil prod) les champs sont exploitables directement.
+    private void journaliser(String message, Commande c) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        int lignes = c.getLignes().size();
+        log.atInfo()
+                .addKeyValue("commandeId", c.getId())
+                .addKeyValue("numCommande", c.getNumCommande())
+                .addKeyValue("lignes", lignes)
+                .addKeyValue("montantTotal", c.getMontantTotal())
+                .log("{} {} : {} ligne(s), total {}", message, c.getId(), lignes, c.getMontantTotal());
+    }
+
+    // Payload complet en DEBUG uniquement, et seulement une requête sur echantillonPayload
+    private void tracerPayload(String message, Object payload) {
+        if (log.isDebugEnabled() && echantillonPayload > 0
+                && compteurPayload.getAndIncrement() % echantillonPayload == 0) {
+            log.debug(message, payload);
+        }
+    }
+
+    // Sauvegarde ; hors transaction Spring, la réservation est compensée ici directement.
+    // Le flush envoie les INSERT/UPDATE maintenant : le temps PostgreSQL est compté dans
+    // l'étape "sauvegarde" et une violation de contrainte remonte avant l'événement outbox.
+    private Commande sauvegarder(Commande c, String reservationId) {
+        try {
+            Commande saved = repository.save(c);
+            repository.flush();
+            return saved;
+        } catch (RuntimeException e) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                compenserReservation(reservationId);
+            }
+            throw e;
+        }
+    }
+
+    private void annulerReservationSiRollback(String reservationId) {
+        if (reservationId == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    compenserReservation(reservationId);
+                }
+            }
+        });
+    }
+
+    private void compenserReservation(String reservationId) {
+        if (reservationId == null) {
+            return;
+        }
+        try {
+            produitClient.annulerReservation(reservationId);
+        } catch (RuntimeException e) {
+            log.error("Compensation impossible pour la réservation de stock {}", reservationId, e);
+        }
+    }
+
+    private record Curseur(LocalDateTime dateCreation, Long id) {
+    }
+
+    private String encoderCurseur(Commande derniere) {
+        String position = derniere.getDateCreation() + "|" + derniere.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Curseur decoderCurseur(String curseur) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(curseur), StandardCharsets.UTF_8);
+            int separateur = position.lastIndexOf('|');
+            return new Curseur(LocalDateTime.parse(position.substring(0, separateur)),
+                    Long.valueOf(position.substring(separateur + 1)));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Curseur de pagination invalide");
+        }
     }
 
     private AdresseDto mapAdresse(Adresse adresse) {
@@ -321,7 +707,7 @@ public class CommandeService {
                 adresse.getPays());
     }
 
-    private CommandeDto mapToDto(Commande c) {
+    CommandeDto mapToDto(Commande c) {
         CommandeDto dto = new CommandeDto();
         dto.setId(c.getId());
         dto.setNumCommande(c.getNumCommande());
@@ -340,16 +726,19 @@ public class CommandeService {
                 .toList();
         dto.setLignes(lignesDto);
         dto.setMontantTotal(c.getMontantTotal());
+        dto.setVersion(c.getVersion());
         return dto;
     }
 
+    // Pas de transaction ici : un succès de cache ne prend aucune connexion. findByIdClient
+    // charge commandes, lignes et adresses en une requête (entity graph).
     public List<CommandeDto> getCommandesByClientId(Long clientId) {
-        List<Commande> commandes = repository.findByIdClient(clientId);
-        return commandes.stream()
+        return cacheClients.get(clientId, id -> repository.findByIdClient(id).stream()
                 .map(this::mapToDto)
-                .collect(Collectors.toList());
+                .toList());
     }
 
+    @Transactional(readOnly = true)
     public List<LigneCommandeDto> getProductsByClientIdAndCommandeId(Long clientId, Long commandeId) {
         Commande commande = repository.findById(commandeId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Commande introuvable"));
@@ -369,21 +758,7 @@ public class CommandeService {
                 .collect(Collectors.toList());
     }
 
-    private Adresse findOrCreateAdresse(Adresse a) {
-        if (a == null) {
-            throw new RuntimeException("Adresse ne peut pas être null");
-        }
-
-        return adresseRepository.findByNumeroRueAndRueAndVilleAndCodePostalAndPays(
-                a.getNumeroRue(),
-                a.getRue(),
-                a.getVille(),
-                a.getCodePostal(),
-                a.getPays())
-                .orElseGet(() -> adresseRepository.save(a));
-    }
-
-    private Adresse mapDtoToAdresse(AdresseDto dto) {
+    Adresse mapDtoToAdresse(AdresseDto dto) {
         if (dto == null) {
             return null;
         }
@@ -0,0 +1,137 @@
+package payetonkawa.api_commande.services;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import payetonkawa.api_commande.model.EvenementOutbox;
+
+// Publication asynchrone des événements de l'outbox. Un lot part sur un seul canal du
+// cache sans attendre le broker ; chaque confirmation (ack/nack, ou son absence au-delà
+// du délai) est corrélée dans un callback puis collectée par OutboxRelay, qui l'écrit en
+// base. Le nombre d'événements publiés mais pas encore confirmés est borné : quand le
+// broker ralentit, le relais lit moins de lignes (contre-pression) au lieu d'empiler.
+@Component
+public class EvenementsPublisher {
+
+    public record Echec(Long id, String raison) {
+    }
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Semaphore enVol;
+    private final Duration attenteConfirmation;
+    private final Timer confirmation;
+
+    // Issues en attente d'écriture par le relais
+    private final Queue<Long> confirmes = new ConcurrentLinkedQueue<>();
+    private final Queue<Echec> echecs = new ConcurrentLinkedQueue<>();
+
+    @Value("${rabbitmq.commandes.exchange}")
+    private String exchange;
+
+    public EvenementsPublisher(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+            @Value("${outbox.publication.en-vol-max:1000}") int enVolMax,
+            @Value("${outbox.relais.attente-confirmation:5s}") Duration attenteConfirmation) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.enVol = new Semaphore(enVolMax);
+        this.attenteConfirmation = attenteConfirmation;
+        this.confirmation = Timer.builder("outbox.publication.confirmation")
+                .description("Délai entre la publication d'un événement et la confirmation du broker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("outbox.publication.en-vol", enVol, s -> enVolMax - s.availablePermits())
+                .description("Événements publiés en attente de confirmation du broker")
+                .register(meterRegistry);
+    }
+
+    public int placesLibres() {
+        return enVol.availablePermits();
+    }
+
+    // Publie le lot sans attendre les confirmations. Si la limite d'événements en vol est
+    // atteinte, la publication s'arrête : les événements restants ne sont pas des échecs
+    // et sont retournés tels quels, à reprendre au prochain cycle.
+    public List<EvenementOutbox> publier(List<EvenementOutbox> lot) {
+        List<EvenementOutbox> nonPublies = rabbitTemplate.invoke(operations -> {
+            for (int i = 0; i < lot.size(); i++) {
+                EvenementOutbox evenement = lot.get(i);
+                if (!enVol.tryAcquire()) {
+                    return lot.subList(i, lot.size());
+                }
+                AtomicBoolean termine = new AtomicBoolean();
+                CorrelationData correlation = new CorrelationData(String.valueOf(evenement.getId()));
+                long debut = System.nanoTime();
+                correlation.getFuture()
+                        .orTimeout(attenteConfirmation.toMillis(), TimeUnit.MILLISECONDS)
+                        .whenComplete((confirm, erreur) -> {
+                            if (!termine.compareAndSet(false, true)) {
+                                return;
+                            }
+                            enVol.release();
+                            confirmation.record(System.nanoTime() - debut, TimeUnit.NANOSECONDS);
+                            if (erreur == null && confirm.isAck()) {
+                                confirmes.add(evenement.getId());
+                            } else {
+                                echecs.add(new Echec(evenement.getId(), erreur instanceof TimeoutException
+                                        ? "pas de confirmation"
+                                        : erreur != null ? erreur.getMessage() : "nack: " + confirm.getReason()));
+                            }
+                        });
+                try {
+                    operations.send(exchange, evenement.getRoutingKey(), toMessage(evenement), correlation);
+                } catch (RuntimeException e) {
+                    if (termine.compareAndSet(false, true)) {
+                        enVol.release();
+                        echecs.add(new Echec(evenement.getId(), e.getMessage()));
+                    }
+                }
+            }
+            return List.<EvenementOutbox>of();
+        });
+        return nonPublies != null ? nonPublies : List.of();
+    }
+
+    public List<Long> confirmes() {
+        return vider(confirmes);
+    }
+
+    public List<Echec> echecs() {
+        return vider(echecs);
+    }
+
+    private static <T> List<T> vider(Queue<T> file) {
+        List<T> elements = new ArrayList<>();
+        for (T element = file.poll(); element != null; element = file.poll()) {
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    private Message toMessage(EvenementOutbox evenement) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setMessageId(String.valueOf(evenement.getId()));
+        properties.setHeader("__TypeId__", evenement.getTypePayload());
+        return new Message(evenement.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
@@ -0,0 +1,79 @@
+package payetonkawa.api_commande.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.StatutCommande;
+import payetonkawa.api_commande.repository.CommandeRepository;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportCommandesService {
+
+    private final CommandeRepository repository;
+    private final CommandeService commandeService;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    // Aligné sur le @BatchSize des lignes : un lot = une requête pour ses lignes
+    @Value("${commandes.export.taille-lot:100}")
+    private int tailleLot;
+
+    // Écrit les commandes filtrées en NDJSON (une commande JSON par ligne) au fil
+    // de la lecture : la mémoire consommée ne dépend que de la taille d'un lot.
+    // Retourne le nombre de commandes exportées.
+    @Transactional(readOnly = true)
+    public long exporter(StatutCommande statut, LocalDateTime dateDebut, LocalDateTime dateFin, OutputStream out)
+            throws IOException {
+        long debut = System.nanoTime();
+        long total = 0;
+
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        // Le flux de la réponse reste géré par l'appelant
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        try (Stream<Commande> commandes = repository.streamPourExport(statut, dateDebut, dateFin)) {
+            Iterator<Commande> it = commandes.iterator();
+            List<Commande> lot = new ArrayList<>(tailleLot);
+            while (it.hasNext()) {
+                lot.add(it.next());
+                if (lot.size() == tailleLot || !it.hasNext()) {
+                    total += ecrireLot(lot, generator);
+                    lot.clear();
+                }
+            }
+        }
+        generator.close();
+
+        log.info("Export NDJSON terminé : {} commande(s) en {} ms", total, (System.nanoTime() - debut) / 1_000_000);
+        return total;
+    }
+
+    private int ecrireLot(List<Commande> lot, JsonGenerator generator) throws IOException {
+        for (Commande c : lot) {
+            generator.writeObject(commandeService.mapToDto(c));
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        // Détache le lot écrit : le contexte de persistance ne grossit pas avec la table
+        entityManager.clear();
+        return lot.size();
+    }
+}
@@ -0,0 +1,274 @@
+package payetonkawa.api_commande.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.dto.ProductDto;
+import payetonkawa.api_commande.dto.RapportImportDto;
+import payetonkawa.api_commande.dto.ResultatImportDto;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.repository.CommandeRepository;
+
+// Import en masse (POST /commandes/import) : les commandes sont traitées par lots.
+// Par lot : une lecture groupée du catalogue, les réservations en parallèle, chaque
+// adresse distincte résolue une fois, puis une seule transaction (INSERT en batch JDBC,
+// événements outbox compris). Une commande en erreur est rejetée seule : si la
+// transaction du lot échoue, ses commandes sont réenregistrées une par une.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImportCommandesService {
+
+    private static final String IMPORT = "import";
+
+    private final CommandeService commandeService;
+    private final CommandeRepository repository;
+    private final AdresseService adresseService;
+    private final ProduitClient produitClient;
+    private final OutboxService outboxService;
+    private final CommandeMetriques metriques;
+    private final CacheCommandesClient cacheClients;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${commandes.import.taille-lot:200}")
+    private int tailleLot;
+
+    // Accepte un tableau JSON ou du NDJSON, lu au fil de l'eau : la mémoire consommée
+    // ne dépend que de la taille d'un lot (hors rapport)
+    public RapportImportDto importer(InputStream in) throws IOException {
+        List<ResultatImportDto> resultats = new ArrayList<>();
+        List<CommandeDto> lot = new ArrayList<>(tailleLot);
+        String erreurLecture = null;
+
+        try (MappingIterator<CommandeDto> commandes = objectMapper.readerFor(CommandeDto.class).readValues(in)) {
+            while (commandes.hasNextValue()) {
+                lot.add(commandes.nextValue());
+                if (lot.size() == tailleLot) {
+                    resultats.addAll(importerLot(lot, resultats.size()));
+                    lot.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // Flux illisible à partir d'ici : ce qui a été lu est tout de même importé
+            erreurLecture = "JSON invalide: " + e.getOriginalMessage();
+        }
+        resultats.addAll(importerLot(lot, resultats.size()));
+        if (erreurLecture != null) {
+            resultats.add(new ResultatImportDto(resultats.size(), null, null, false, erreurLecture));
+        }
+
+        int creees = (int) resultats.stream().filter(ResultatImportDto::isSucces).count();
+        log.info("Import de commandes : {} créée(s), {} rejetée(s)", creees, resultats.size() - creees);
+        return new RapportImportDto(resultats.size(), creees, resultats.size() - creees, resultats);
+    }
+
+    private List<ResultatImportDto> importerLot(List<CommandeDto> lot, int premierIndex) {
+        if (lot.isEmpty()) {
+            return List.of();
+        }
+        return metriques.mesurer(IMPORT, "lot", () -> {
+            ResultatImportDto[] resultats = new ResultatImportDto[lot.size()];
+            Map<Integer, Map<Long, Integer>> valides = valider(lot, premierIndex, resultats);
+
+            Map<Long, ProductDto> produits = verifierProduits(lot, premierIndex, valides, resultats);
+            Map<Integer, String> reservations = reserver(lot, premierIndex, valides, resultats);
+            if (valides.isEmpty()) {
+                return Arrays.asList(resultats);
+            }
+
+            List<Integer> positions = new ArrayList<>(valides.keySet());
+            try {
+                List<CommandeDto> creees = transactionTemplate.execute(status -> enregistrer(lot, positions, produits));
+                for (int k = 0; k < positions.size(); k++) {
+                    int i = positions.get(k);
+                    resultats[i] = succes(premierIndex + i, creees.get(k));
+                }
+            } catch (RuntimeException e) {
+                // Une seule commande fautive suffit à annuler le lot : repli commande par commande
+                log.warn("Échec de l'enregistrement d'un lot de {} commande(s) importée(s), repli unitaire",
+                        positions.size(), e);
+                for (int i : positions) {
+                    resultats[i] = enregistrerSeule(lot, i, premierIndex, produits, reservations.get(i));
+                }
+            }
+            return Arrays.asList(resultats);
+        });
+    }
+
+    // Validation unitaire, puis numéros en double dans le lot ou déjà attribués en base
+    private Map<Integer, Map<Long, Integer>> valider(List<CommandeDto> lot, int premierIndex,
+            ResultatImportDto[] resultats) {
+        Map<Integer, Map<Long, Integer>> valides = new LinkedHashMap<>();
+        Set<String> numeros = new HashSet<>();
+        for (int i = 0; i < lot.size(); i++) {
+            CommandeDto dto = lot.get(i);
+            try {
+                Map<Long, Integer> quantites = commandeService.validerCreation(dto);
+                if (dto.getNumCommande() != null && !dto.getNumCommande().isEmpty()
+                        && !numeros.add(dto.getNumCommande())) {
+                    throw new RuntimeException("Numéro de commande en double dans l'import: " + dto.getNumCommande());
+                }
+                valides.put(i, quantites);
+            } catch (RuntimeException e) {
+                resultats[i] = rejet(premierIndex + i, dto, e);
+            }
+        }
+
+        if (!numeros.isEmpty()) {
+            Set<String> existants = repository.findNumCommandesExistants(numeros);
+            for (Integer i : new ArrayList<>(valides.keySet())) {
+                String numero = lot.get(i).getNumCommande();
+                if (numero != null && existants.contains(numero)) {
+                    valides.remove(i);
+                    resultats[i] = rejet(premierIndex + i, lot.get(i),
+                            new RuntimeException("Numéro de commande déjà utilisé: " + numero));
+                }
+            }
+        }
+        return valides;
+    }
+
+    // Une lecture groupée pour tous les produits du lot. Si elle échoue (un produit inconnu
+    // suffit), repli produit par produit pour ne rejeter que les commandes concernées.
+    // Le stock n'est pas vérifié ici : la réservation fait foi.
+    private Map<Long, ProductDto> verifierProduits(List<CommandeDto> lot, int premierIndex,
+            Map<Integer, Map<Long, Integer>> valides, ResultatImportDto[] resultats) {
+        Set<Long> produitIds = new HashSet<>();
+        valides.values().forEach(quantites -> produitIds.addAll(quantites.keySet()));
+
+        Map<Long, ProductDto> produits = new HashMap<>();
+        Map<Long, RuntimeException> produitsEnEchec = new HashMap<>();
+        try {
+            produits.putAll(produitClient.getProduitsByIds(produitIds));
+        } catch (RuntimeException e) {
+            log.warn("Lecture groupée du catalogue en échec ({}), repli produit par produit", e.getMessage());
+            for (Long produitId : produitIds) {
+                try {
+                    produits.put(produitId, produitClient.getProduitById(produitId));
+                } catch (RuntimeException echec) {
+                    produitsEnEchec.put(produitId, echec);
+                }
+            }
+        }
+
+        for (Integer i : new ArrayList<>(valides.keySet())) {
+            for (Long produitId : valides.get(i).keySet()) {
+                RuntimeException echec = produitsEnEchec.get(produitId);
+                if (echec != null) {
+                    valides.remove(i);
+                    resultats[i] = rejet(premierIndex + i, lot.get(i), echec);
+                    break;
+                }
+            }
+        }
+        return produits;
+    }
+
+    // Une réservation atomique par commande, toutes lancées en parallèle
+    private Map<Integer, String> reserver(List<CommandeDto> lot, int premierIndex,
+            Map<Integer, Map<Long, Integer>> valides, ResultatImportDto[] resultats) {
+        Map<Integer, String> reservations = new HashMap<>();
+        Map<String, Map<Long, Integer>> demandes = new LinkedHashMap<>();
+        valides.forEach((i, quantites) -> {
+            String reservationId = UUID.randomUUID().toString();
+            reservations.put(i, reservationId);
+            demandes.put(reservationId, quantites);
+        });
+
+        Map<String, RuntimeException> echecs = produitClient.reserverStocks(demandes);
+        for (Integer i : new ArrayList<>(valides.keySet())) {
+            RuntimeException echec = echecs.get(reservations.get(i));
+            if (echec != null) {
+                // Un refus (409) n'a rien réservé ; sinon l'issue est incertaine
+                if (echec.getCause() instanceof HttpClientErrorException.Conflict) {
+                    metriques.rejetStock(IMPORT);
+                } else {
+                    compenser(reservations.get(i));
+                }
+                valides.remove(i);
+                resultats[i] = rejet(premierIndex + i, lot.get(i), echec);
+            }
+        }
+        return reservations;
+    }
+
+    private List<CommandeDto> enregistrer(List<CommandeDto> lot, List<Integer> positions,
+            Map<Long, ProductDto> produits) {
+        // Une adresse partagée par plusieurs commandes du lot n'est résolue qu'une fois
+        Map<String, Adresse> adresses = new HashMap<>();
+        List<Commande> commandes = new ArrayList<>(positions.size());
+        for (int i : positions) {
+            CommandeDto dto = lot.get(i);
+            Commande c = commandeService.nouvelleCommande(dto);
+            Adresse adresse = commandeService.mapDtoToAdresse(dto.getAdresseLivraison());
+            c.setAdresseLivraison(adresses.computeIfAbsent(adresse.calculerEmpreinte(),
+                    empreinte -> adresseService.trouverOuCreer(adresse)));
+            commandeService.remplirLignes(c, dto.getLignes(), produits);
+            commandes.add(c);
+        }
+
+        List<Commande> enregistrees = repository.saveAll(commandes);
+        repository.flush();
+
+        List<CommandeDto> dtos = enregistrees.stream().map(commandeService::mapToDto).toList();
+        outboxService.enregistrerTous("commande.created", dtos);
+        commandes.forEach(c -> {
+            metriques.lignes(c.getLignes().size());
+            cacheClients.invaliderApresCommit(c.getIdClient());
+        });
+        return dtos;
+    }
+
+    // Échec de sa transaction : la réservation de la commande est restituée
+    private ResultatImportDto enregistrerSeule(List<CommandeDto> lot, int i, int premierIndex,
+            Map<Long, ProductDto> produits, String reservationId) {
+        try {
+            List<CommandeDto> creee = transactionTemplate.execute(status -> enregistrer(lot, List.of(i), produits));
+            return succes(premierIndex + i, creee.get(0));
+        } catch (RuntimeException e) {
+            log.error("Échec de l'enregistrement de la commande importée {}", premierIndex + i, e);
+            compenser(reservationId);
+            return rejet(premierIndex + i, lot.get(i), e);
+        }
+    }
+
+    private void compenser(String reservationId) {
+        try {
+            produitClient.annulerReservation(reservationId);
+        } catch (RuntimeException e) {
+            log.error("Compensation impossible pour la réservation de stock {}", reservationId, e);
+        }
+    }
+
+    private static ResultatImportDto succes(int index, CommandeDto creee) {
+        return new ResultatImportDto(index, creee.getNumCommande(), creee.getId(), true, null);
+    }
+
+    private static ResultatImportDto rejet(int index, CommandeDto dto, RuntimeException e) {
+        String erreur = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        return new ResultatImportDto(index, dto != null ? dto.getNumCommande() : null, null, false, erreur);
+    }
+}
@@ -0,0 +1,10 @@
+package payetonkawa.api_commande.services;
+
+// Fournit les numéros de commande (numCommande), uniques sur toutes les instances.
+// Implémentation choisie par commandes.numero.strategie : sequence (défaut) ou snowflake.
+public interface NumCommandeGenerator {
+
+    String PREFIXE = "CMD-";
+
+    String prochain();
+}
@@ -0,0 +1,164 @@
+package payetonkawa.api_commande.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.model.EvenementOutbox;
+import payetonkawa.api_commande.repository.EvenementOutboxRepository;
+
+// Publie les événements de l'outbox par lots, hors du chemin des requêtes.
+// Une ligne n'est marquée envoyée qu'après l'ack du broker (publisher confirms) :
+// livraison au moins une fois, le messageId permet aux consommateurs de dédoublonner.
+// Les confirmations arrivent de façon asynchrone (EvenementsPublisher) : aucune
+// transaction ni aucun verrou n'est tenu pendant l'attente du broker.
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private final EvenementOutboxRepository repository;
+    private final EvenementsPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    // Événements pas encore confirmés par le broker, et événements mis de côté,
+    // rafraîchis à chaque cycle
+    private final AtomicLong enAttente = new AtomicLong();
+    private final AtomicLong abandonnes = new AtomicLong();
+
+    @Value("${outbox.relais.taille-lot:100}")
+    private int tailleLot;
+
+    @Value("${outbox.relais.attente-confirmation:5s}")
+    private Duration attenteConfirmation;
+
+    @Value("${outbox.relais.reessai-initial:1s}")
+    private Duration reessaiInitial;
+
+    @Value("${outbox.relais.reessai-max:5m}")
+    private Duration reessaiMax;
+
+    @Value("${outbox.relais.tentatives-max:20}")
+    private int tentativesMax;
+
+    @Value("${outbox.retention:7d}")
+    private Duration retention;
+
+    public OutboxRelay(EvenementOutboxRepository repository, EvenementsPublisher publisher,
+            TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.publisher = publisher;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("outbox.evenements.en-attente", enAttente);
+        meterRegistry.gauge("outbox.evenements.abandonnes", abandonnes);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relais.intervalle-ms:500}")
+    public void relayer() {
+        int reserves;
+        do {
+            enregistrerConfirmations();
+            List<EvenementOutbox> lot = reserverLot();
+            reserves = lot.size();
+            if (!lot.isEmpty()) {
+                List<EvenementOutbox> nonPublies = publisher.publier(lot);
+                log.debug("Outbox : {}/{} événement(s) publié(s), confirmations en attente",
+                        reserves - nonPublies.size(), reserves);
+                if (!nonPublies.isEmpty()) {
+                    // Fenêtre pleine : rendus sans tentative ni délai, repris au prochain cycle
+                    transactionTemplate.executeWithoutResult(status -> repository
+                            .libererBail(nonPublies.stream().map(EvenementOutbox::getId).toList()));
+                    break;
+                }
+            }
+        } while (reserves == tailleLot);
+        enAttente.set(repository.countByDateEnvoiIsNullAndDateAbandonIsNull());
+        abandonnes.set(repository.countByDateEnvoiIsNullAndDateAbandonIsNotNull());
+    }
+
+    @Scheduled(cron = "${outbox.purge.cron:0 0 3 * * *}")
+    public void purger() {
+        Integer supprimes = transactionTemplate.execute(
+                status -> repository.deleteEnvoyesAvant(LocalDateTime.now().minus(retention)));
+        log.info("Outbox : {} événement(s) envoyé(s) purgé(s)", supprimes);
+    }
+
+    // Reporte en base les acks et les échecs reçus depuis le cycle précédent
+    void enregistrerConfirmations() {
+        List<Long> confirmes = publisher.confirmes();
+        List<EvenementsPublisher.Echec> echecs = publisher.echecs();
+        if (confirmes.isEmpty() && echecs.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!confirmes.isEmpty()) {
+                repository.marquerEnvoyes(confirmes, LocalDateTime.now());
+            }
+            if (!echecs.isEmpty()) {
+                Map<Long, EvenementOutbox> evenements = repository
+                        .findAllById(echecs.stream().map(EvenementsPublisher.Echec::id).toList()).stream()
+                        .collect(Collectors.toMap(EvenementOutbox::getId, Function.identity()));
+                for (EvenementsPublisher.Echec echec : echecs) {
+                    EvenementOutbox evenement = evenements.get(echec.id());
+                    if (evenement != null) {
+                        echec(evenement, echec.raison());
+                    }
+                }
+            }
+        });
+        meterRegistry.counter("outbox.evenements", "issue", "publie").increment(confirmes.size());
+    }
+
+    // Réserve le prochain lot, borné par la fenêtre d'événements en vol (contre-pression) :
+    // un bail le soustrait aux autres cycles et instances le temps de la confirmation
+    List<EvenementOutbox> reserverLot() {
+        int taille = Math.min(tailleLot, publisher.placesLibres());
+        if (taille == 0) {
+            return List.of();
+        }
+        return transactionTemplate.execute(status -> {
+            LocalDateTime maintenant = LocalDateTime.now();
+            List<EvenementOutbox> lot = repository.findAEnvoyer(maintenant, PageRequest.of(0, taille));
+            LocalDateTime bail = maintenant.plus(attenteConfirmation.multipliedBy(2));
+            lot.forEach(evenement -> evenement.setProchainEssai(bail));
+            return lot;
+        });
+    }
+
+    private void echec(EvenementOutbox evenement, String raison) {
+        meterRegistry.counter("outbox.evenements", "issue", "echec").increment();
+        evenement.setTentatives(evenement.getTentatives() + 1);
+        evenement.setDerniereErreur(raison != null && raison.length() > 500 ? raison.substring(0, 500) : raison);
+        if (evenement.getTentatives() >= tentativesMax) {
+            // Échec persistant (nack systématique...) : mis de côté plutôt que réessayé sans fin
+            evenement.setProchainEssai(null);
+            evenement.setDateAbandon(LocalDateTime.now());
+            meterRegistry.counter("outbox.evenements", "issue", "abandon").increment();
+            log.error("Outbox : événement {} mis de côté après {} tentatives ({})",
+                    evenement.getId(), evenement.getTentatives(), raison);
+            return;
+        }
+        evenement.setProchainEssai(LocalDateTime.now().plus(delaiReessai(evenement.getTentatives())));
+        log.warn("Outbox : échec de publication de l'événement {} ({}), tentative {}",
+                evenement.getId(), raison, evenement.getTentatives());
+    }
+
+    // Délai exponentiel : reessai-initial, puis doublé à chaque tentative jusqu'à reessai-max
+    Duration delaiReessai(int tentatives) {
+        Duration delai = reessaiInitial.multipliedBy(1L << Math.min(tentatives - 1, 20));
+        return delai.compareTo(reessaiMax) > 0 ? reessaiMax : delai;
+    }
+}
@@ -0,0 +1,56 @@
+package payetonkawa.api_commande.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import payetonkawa.api_commande.model.EvenementOutbox;
+import payetonkawa.api_commande.repository.EvenementOutboxRepository;
+
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final EvenementOutboxRepository repository;
+    private final ObjectMapper objectMapper;
+
+    // Enregistre l'événement dans la transaction de l'appelant : il ne sera publié
+    // (par OutboxRelay) que si la commande est effectivement commitée
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enregistrer(String routingKey, Object evenement) {
+        EvenementOutbox e = new EvenementOutbox();
+        e.setRoutingKey(routingKey);
+        e.setTypePayload(evenement.getClass().getName());
+        try {
+            e.setPayload(objectMapper.writeValueAsString(evenement));
+        } catch (JsonProcessingException ex) {
+            throw new RuntimeException("Impossible de sérialiser l'événement " + routingKey, ex);
+        }
+        repository.save(e);
+    }
+
+    // Variante groupée (import en masse) : les INSERT partent en batch JDBC
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enregistrerTous(String routingKey, List<?> evenements) {
+        List<EvenementOutbox> lot = new ArrayList<>(evenements.size());
+        for (Object evenement : evenements) {
+            EvenementOutbox e = new EvenementOutbox();
+            e.setRoutingKey(routingKey);
+            e.setTypePayload(evenement.getClass().getName());
+            try {
+                e.setPayload(objectMapper.writeValueAsString(evenement));
+            } catch (JsonProcessingException ex) {
+                throw new RuntimeException("Impossible de sérialiser l'événement " + routingKey, ex);
+            }
+            lot.add(e);
+        }
+        repository.saveAll(lot);
+    }
+}
@@ -1,38 +1,184 @@
 package payetonkawa.api_commande.services;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.dto.MouvementStockDto;
 import payetonkawa.api_commande.dto.ProductDto;
+import payetonkawa.api_commande.dto.ReservationStockDto;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ProduitClient {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    // Réservation lancée en même temps que la lecture du catalogue par ce thread. La lecture
+    // passe par le chargeur du cache, qui ne prend pas de paramètre : enParallele la consulte
+    // entre deux lots et abandonne les lots restants dès que la réservation échoue.
+    private static final ThreadLocal<Future<?>> RESERVATION_EN_COURS = new ThreadLocal<>();
+
+    // Intervalle de vérification de la réservation pendant l'attente des lots
+    private static final long VERIFICATION_RESERVATION_MS = 20;
+
     private final RestTemplate restTemplate;
+    private final Executor produitExecutor;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
 
     @Value("${api.produits.url:http://localhost:8081/products/}")
     private String baseUrl;
 
+    // Endpoint de lecture groupée (GET {baseUrl}{path}?ids=1,2,3)
+    @Value("${api.produits.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${api.produits.batch.path:batch}")
+    private String batchPath;
+
+    @Value("${api.produits.batch.taille:50}")
+    private int tailleLot;
+
+    @Value("${api.produits.reservations.path:stock/reservations}")
+    private String reservationsPath;
+
+    // Cache du catalogue (libellé, prix...) : taille bornée, éviction W-TinyLFU
+    @Value("${api.produits.cache.taille-max:10000}")
+    private long tailleMaxCache;
+
+    @Value("${api.produits.cache.ttl:10m}")
+    private Duration ttlCache;
+
+    // Instantané de secours (plus durable que le cache) pour les lectures seules
+    @Value("${api.produits.instantane.taille-max:50000}")
+    private long tailleMaxInstantane;
+
+    @Value("${api.produits.instantane.ttl:24h}")
+    private Duration ttlInstantane;
+
+    // Passe à false dès que l'API Produits répond qu'elle n'a pas d'endpoint groupé
+    private final AtomicBoolean batchDisponible = new AtomicBoolean(true);
+
+    private LoadingCache<Long, ProductDto> catalogue;
+    private Cache<Long, ProductDto> instantane;
+
+    public ProduitClient(RestTemplate restTemplate,
+            @Qualifier("produitClientExecutor") Executor produitExecutor,
+            MeterRegistry meterRegistry,
+            CircuitBreaker produitsCircuitBreaker,
+            Bulkhead produitsBulkhead) {
+        this.restTemplate = restTemplate;
+        this.produitExecutor = produitExecutor;
+        this.meterRegistry = meterRegistry;
+        this.circuitBreaker = produitsCircuitBreaker;
+        this.bulkhead = produitsBulkhead;
+    }
+
     @PostConstruct
     public void init() {
+        instantane = Caffeine.newBuilder()
+                .maximumSize(tailleMaxInstantane)
+                .expireAfterWrite(ttlInstantane)
+                .build();
+
+        // get/getAll : un seul chargement en cours par ID, les appels concurrents l'attendent
+        catalogue = Caffeine.newBuilder()
+                .maximumSize(tailleMaxCache)
+                .expireAfterWrite(ttlCache)
+                .recordStats()
+                .build(new CacheLoader<Long, ProductDto>() {
+                    @Override
+                    public ProductDto load(Long produitId) {
+                        return memoriser(chargerProduit(produitId));
+                    }
+
+                    @Override
+                    public Map<Long, ProductDto> loadAll(Set<? extends Long> produitIds) {
+                        Map<Long, ProductDto> produits = new HashMap<>();
+                        chargerProduits(new ArrayList<>(produitIds))
+                                .forEach((id, produit) -> produits.put(id, memoriser(produit)));
+                        return produits;
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, catalogue, "produits");
+
         log.info("========================================");
         log.info("ProduitClient initialisé avec baseUrl: {}", baseUrl);
         log.info("========================================");
     }
 
-    // Récupérer tout le produit
+    // Récupérer le produit (libellé, prix...) depuis le cache, chargé à la demande.
+    // Le stock n'est jamais mis en cache : il vaut null ici et c'est la réservation
+    // (reserverStock) qui fait foi.
     public ProductDto getProduitById(Long produitId) {
+        return catalogue.get(produitId);
+    }
+
+    // Récupérer plusieurs produits : les absents du cache sont chargés en un minimum d'appels
+    public Map<Long, ProductDto> getProduitsByIds(Collection<Long> produitIds) {
+        Set<Long> ids = produitIds.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return catalogue.getAll(ids);
+    }
+
+    private ProductDto chargerProduit(Long produitId) {
         try {
             String url = baseUrl + produitId;
-            log.info("Appel API Produits: {}", url);
-            ProductDto produit = restTemplate.getForObject(url, ProductDto.class);
+            log.debug("Appel API Produits: {}", url);
+            ProductDto produit = proteger("produit", () -> restTemplate.getForObject(url, ProductDto.class));
 
             if (produit == null) {
                 throw new RuntimeException("Produit introuvable avec l'ID: " + produitId);
@@ -45,29 +191,358 @@ public class ProduitClient {
         }
     }
 
-    // Récupérer uniquement le libellé (qui s'appelle "name" dans l'API)
+    // Charger plusieurs produits en un minimum d'appels
+    private Map<Long, ProductDto> chargerProduits(List<Long> ids) {
+        if (ids.size() == 1) {
+            return Map.of(ids.get(0), chargerProduit(ids.get(0)));
+        }
+
+        if (batchEnabled && batchDisponible.get()) {
+            try {
+                return getProduitsParLots(ids);
+            } catch (HttpClientErrorException e) {
+                if (!endpointGroupeAbsent(e)) {
+                    log.error("Erreur lors de la récupération groupée des produits {}: {}", ids, e.getMessage());
+                    throw new RuntimeException("Service Produits indisponible pour les IDs: " + ids, e);
+                }
+                log.warn("Pas d'endpoint groupé sur l'API Produits ({}), bascule en appels unitaires parallèles",
+                        e.getStatusCode());
+                batchDisponible.set(false);
+            } catch (RestClientException e) {
+                log.error("Erreur lors de la récupération groupée des produits {}: {}", ids, e.getMessage());
+                throw new RuntimeException("Service Produits indisponible pour les IDs: " + ids, e);
+            }
+        }
+
+        return getProduitsEnParallele(ids);
+    }
+
+    // Récupérer uniquement le libellé (qui s'appelle "name" dans l'API).
+    // Lecture seule : si l'API Produits est indisponible, on sert le dernier instantané connu.
     public String getLibelleById(Long produitId) {
-        ProductDto produit = getProduitById(produitId);
+        ProductDto produit;
+        try {
+            produit = getProduitById(produitId);
+        } catch (RuntimeException e) {
+            produit = instantane.getIfPresent(produitId);
+            if (produit == null) {
+                throw e;
+            }
+            log.warn("API Produits indisponible, libellé du produit {} servi depuis l'instantané local", produitId);
+        }
         return produit != null ? produit.getName() : null;
     }
 
-    // Mettre à jour le stock
-    public void updateStock(Long produitId, int nouveauStock) {
+    // Réserver en une seule requête le stock de toute une commande.
+    // Les quantités sont envoyées en variations relatives : l'API Produits applique
+    // tous les mouvements atomiquement, et rejoue la même réponse pour une même clé.
+    // Une quantité négative (modification de commande) restitue du stock.
+    public String reserverStock(String reservationId, Map<Long, Integer> quantitesParProduit) {
+        List<MouvementStockDto> mouvements = quantitesParProduit.entrySet().stream()
+                .map(e -> new MouvementStockDto(e.getKey(), -e.getValue()))
+                .toList();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(IDEMPOTENCY_KEY, reservationId);
+
         try {
-            String url = baseUrl + produitId;
-            ProductDto produit = getProduitById(produitId);
+            HttpEntity<ReservationStockDto> requete = new HttpEntity<>(
+                    new ReservationStockDto(reservationId, mouvements), headers);
+            proteger("reservation", () -> restTemplate.exchange(baseUrl + reservationsPath, HttpMethod.POST,
+                    requete, Void.class));
+            log.debug("Stock réservé (réservation {}) pour {} produit(s)", reservationId, mouvements.size());
+            return reservationId;
 
-            if (produit == null) {
-                throw new RuntimeException("Produit introuvable pour mise à jour du stock: " + produitId);
+        } catch (HttpClientErrorException.Conflict e) {
+            log.warn("Réservation {} refusée par l'API Produits: {}", reservationId, e.getResponseBodyAsString());
+            throw new RuntimeException("Stock insuffisant pour la réservation " + reservationId
+                    + ": " + e.getResponseBodyAsString(), e);
+        } catch (RestClientException e) {
+            log.error("Erreur lors de la réservation de stock {}: {}", reservationId, e.getMessage());
+            throw new RuntimeException("Impossible de réserver le stock (réservation " + reservationId + ")", e);
+        }
+    }
+
+    // Lecture du catalogue et réservation du stock lancées ensemble : la commande ne paie
+    // qu'un aller-retour vers l'API Produits. Si la lecture échoue alors que la réservation
+    // a pu aboutir, celle-ci est compensée avant de remonter l'erreur.
+    // Seule la réservation part sur le pool Produits ; le catalogue est lu sur le thread
+    // appelant, car son chargement répartit lui-même ses appels sur ce pool borné : une
+    // tâche du pool qui attendrait d'autres tâches du pool finirait par le bloquer.
+    public PreparationCommande preparerCommande(String reservationId, Map<Long, Integer> quantitesParProduit) {
+        return preparerCommande(reservationId, quantitesParProduit.keySet(), quantitesParProduit);
+    }
+
+    // Modification d'une commande : catalogue des seuls produits à lire, stock ajusté des
+    // seules variations de quantité. Un côté vide n'occasionne aucun appel.
+    public PreparationCommande preparerCommande(String reservationId, Collection<Long> produitsALire,
+            Map<Long, Integer> variations) {
+        if (variations.isEmpty()) {
+            return new PreparationCommande(produitsALire.isEmpty() ? Map.of() : getProduitsByIds(produitsALire), null);
+        }
+        if (produitsALire.isEmpty()) {
+            return new PreparationCommande(Map.of(), reserverStock(reservationId, variations));
+        }
+
+        // Positionné par la réservation à son démarrage, ou par l'appelant pour l'empêcher
+        // de démarrer : une réservation jamais lancée n'a rien à compenser
+        AtomicBoolean reservationLancee = new AtomicBoolean();
+        FutureTask<String> reservation = new FutureTask<>(() -> reservationLancee.compareAndSet(false, true)
+                ? reserverStock(reservationId, variations)
+                : null);
+        produitExecutor.execute(reservation);
+
+        Map<Long, ProductDto> produits;
+        RESERVATION_EN_COURS.set(reservation);
+        try {
+            produits = getProduitsByIds(produitsALire);
+        } catch (RuntimeException e) {
+            // e peut être l'échec de la réservation elle-même (lecture abandonnée)
+            if (!reservationLancee.compareAndSet(false, true)) {
+                // Déjà lancée : on attend son issue pour ne pas compenser avant qu'elle n'aboutisse
+                try {
+                    attendre(reservation);
+                    compenser(reservationId, e);
+                } catch (RuntimeException echecReservation) {
+                    if (!stockRefuse(echecReservation)) {
+                        compenser(reservationId, e);
+                    }
+                }
+            }
+            throw e;
+        } finally {
+            RESERVATION_EN_COURS.remove();
+        }
+
+        try {
+            return new PreparationCommande(produits, attendre(reservation));
+        } catch (RuntimeException e) {
+            // Un refus de stock (409) n'a rien réservé ; dans tous les autres cas on compense
+            if (!stockRefuse(e)) {
+                compenser(reservationId, e);
             }
+            throw e;
+        }
+    }
+
+    private static boolean stockRefuse(RuntimeException e) {
+        return e.getCause() instanceof HttpClientErrorException.Conflict;
+    }
+
+    private void compenser(String reservationId, RuntimeException erreur) {
+        try {
+            annulerReservation(reservationId);
+        } catch (RuntimeException compensation) {
+            erreur.addSuppressed(compensation);
+        }
+    }
+
+    // Réservations indépendantes (une par commande d'un import) lancées en parallèle.
+    // Retourne les échecs par identifiant de réservation ; les autres ont abouti.
+    public Map<String, RuntimeException> reserverStocks(Map<String, Map<Long, Integer>> reservations) {
+        Map<String, FutureTask<String>> appels = new LinkedHashMap<>();
+        reservations.forEach((reservationId, quantites) -> {
+            FutureTask<String> appel = new FutureTask<>(() -> reserverStock(reservationId, quantites));
+            produitExecutor.execute(appel);
+            appels.put(reservationId, appel);
+        });
+
+        Map<String, RuntimeException> echecs = new HashMap<>();
+        appels.forEach((reservationId, appel) -> {
+            try {
+                appel.get();
+            } catch (ExecutionException e) {
+                echecs.put(reservationId, e.getCause() instanceof RuntimeException cause
+                        ? cause
+                        : new RuntimeException("Réservation de stock en échec: " + reservationId, e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                appel.cancel(true);
+                echecs.put(reservationId, new RuntimeException("Réservation de stock interrompue: " + reservationId, e));
+            }
+        });
+        return echecs;
+    }
+
+    public record PreparationCommande(Map<Long, ProductDto> produits, String reservationId) {
+    }
 
-            produit.setStock(nouveauStock);
-            restTemplate.put(url, produit);
-            log.info("Stock mis à jour pour le produit {}: nouveau stock = {}", produitId, nouveauStock);
+    // Annuler (compenser) une réservation : l'API Produits restitue tous ses mouvements
+    public void annulerReservation(String reservationId) {
+        try {
+            proteger("annulation-reservation", () -> {
+                restTemplate.delete(baseUrl + reservationsPath + "/" + reservationId);
+                return null;
+            });
+            log.info("Réservation de stock {} annulée", reservationId);
 
+        } catch (HttpClientErrorException.NotFound e) {
+            log.info("Réservation de stock {} déjà absente, rien à annuler", reservationId);
         } catch (RestClientException e) {
-            log.error("Erreur lors de la mise à jour du stock du produit {}: {}", produitId, e.getMessage());
-            throw new RuntimeException("Impossible de mettre à jour le stock du produit: " + produitId, e);
+            log.error("Erreur lors de l'annulation de la réservation {}: {}", reservationId, e.getMessage());
+            throw new RuntimeException("Impossible d'annuler la réservation de stock: " + reservationId, e);
+        }
+    }
+
+    private Map<Long, ProductDto> getProduitsParLots(List<Long> ids) {
+        List<Callable<ProductDto[]>> lots = new ArrayList<>();
+        for (int debut = 0; debut < ids.size(); debut += tailleLot) {
+            List<Long> lot = ids.subList(debut, Math.min(debut + tailleLot, ids.size()));
+            lots.add(() -> getLot(lot));
+        }
+
+        Map<Long, ProductDto> produits = new HashMap<>();
+        for (ProductDto[] resultat : enParallele(lots)) {
+            if (resultat != null) {
+                Arrays.stream(resultat)
+                        .filter(p -> p != null && p.getId() != null)
+                        .forEach(p -> produits.put(p.getId(), p));
+            }
+        }
+
+        for (Long id : ids) {
+            if (!produits.containsKey(id)) {
+                throw new RuntimeException("Produit introuvable avec l'ID: " + id);
+            }
+        }
+        return produits;
+    }
+
+    private ProductDto[] getLot(List<Long> lot) {
+        String url = baseUrl + batchPath + "?ids="
+                + lot.stream().map(String::valueOf).collect(Collectors.joining(","));
+        log.debug("Appel API Produits (lot de {}): {}", lot.size(), url);
+        return proteger("produits-lot", () -> restTemplate.getForObject(url, ProductDto[].class));
+    }
+
+    private Map<Long, ProductDto> getProduitsEnParallele(List<Long> ids) {
+        List<Callable<ProductDto>> appels = new ArrayList<>();
+        for (Long id : ids) {
+            appels.add(() -> chargerProduit(id));
+        }
+
+        List<ProductDto> resultats = enParallele(appels);
+        Map<Long, ProductDto> produits = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            produits.put(ids.get(i), resultats.get(i));
+        }
+        return produits;
+    }
+
+    // Appel protégé par le circuit breaker (rejet immédiat si ouvert) et le bulkhead
+    // (nombre d'appels simultanés borné), mesuré dans l'histogramme produits.client.appels
+    private <T> T proteger(String operation, Supplier<T> appel) {
+        Supplier<T> protege = CircuitBreaker.decorateSupplier(circuitBreaker,
+                Bulkhead.decorateSupplier(bulkhead, appel));
+        Timer.Sample debut = Timer.start(meterRegistry);
+        String issue = "succes";
+        try {
+            return protege.get();
+        } catch (CallNotPermittedException e) {
+            issue = "circuit-ouvert";
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Service Produits indisponible (circuit ouvert)", e);
+        } catch (BulkheadFullException e) {
+            issue = "bulkhead-plein";
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Service Produits saturé, réessayez plus tard", e);
+        } catch (RuntimeException e) {
+            issue = "erreur";
+            throw e;
+        } finally {
+            debut.stop(Timer.builder("produits.client.appels")
+                    .description("Appels vers l'API Produits")
+                    .tag("operation", operation)
+                    .tag("issue", issue)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    private ProductDto memoriser(ProductDto produit) {
+        ProductDto copie = sansStock(produit);
+        instantane.put(copie.getId(), copie);
+        return copie;
+    }
+
+    private static ProductDto sansStock(ProductDto produit) {
+        ProductDto copie = new ProductDto();
+        copie.setId(produit.getId());
+        copie.setName(produit.getName());
+        copie.setDescription(produit.getDescription());
+        copie.setPrice(produit.getPrice());
+        copie.setCreatedAt(produit.getCreatedAt());
+        return copie;
+    }
+
+    private boolean endpointGroupeAbsent(HttpClientErrorException e) {
+        return e.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)
+                || e.getStatusCode().isSameCodeAs(HttpStatus.METHOD_NOT_ALLOWED)
+                || e.getStatusCode().isSameCodeAs(HttpStatus.BAD_REQUEST);
+    }
+
+    private static <T> T attendre(Future<T> appel) {
+        try {
+            return appel.get();
+        } catch (ExecutionException e) {
+            throw causeDe(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Appel à l'API Produits interrompu", e);
+        }
+    }
+
+    private static RuntimeException causeDe(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+            return cause;
+        }
+        if (e.getCause() instanceof Error erreur) {
+            throw erreur;
+        }
+        return new RuntimeException("Appel à l'API Produits en échec", e.getCause());
+    }
+
+    // Lance les appels sur le pool Produits et attend qu'ils aboutissent tous. Au premier
+    // échec, les autres sont annulés sans attendre : jamais lancés s'ils sont encore dans
+    // la file du pool, interrompus sinon (effectif sur une socket en threads virtuels).
+    // Les appels ne doivent pas repasser par le pool : une tâche du pool qui en attend
+    // d'autres peut le bloquer dès qu'il est saturé.
+    // Pendant une préparation de commande, l'échec de la réservation interrompt aussi l'attente
+    // (les lots restants sont annulés et l'erreur de la réservation est remontée).
+    private <T> List<T> enParallele(List<Callable<T>> appels) {
+        CompletionService<T> termines = new ExecutorCompletionService<>(produitExecutor);
+        List<Future<T>> futures = new ArrayList<>(appels.size());
+        Future<?> reservation = RESERVATION_EN_COURS.get();
+        try {
+            for (Callable<T> appel : appels) {
+                futures.add(termines.submit(appel));
+            }
+            int termine = 0;
+            while (termine < futures.size()) {
+                Future<T> appel = reservation == null
+                        ? termines.take()
+                        : termines.poll(VERIFICATION_RESERVATION_MS, TimeUnit.MILLISECONDS);
+                if (appel != null) {
+                    appel.get();
+                    termine++;
+                }
+                if (reservation != null && reservation.isDone()) {
+                    // Lève l'erreur de la réservation ; aboutie, elle n'est plus surveillée
+                    attendre(reservation);
+                    reservation = null;
+                }
+            }
+            return futures.stream().map(Future::resultNow).toList();
+
+        } catch (ExecutionException e) {
+            throw causeDe(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Appels à l'API Produits interrompus", e);
+        } finally {
+            // Sans effet sur les appels terminés
+            futures.forEach(future -> future.cancel(true));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package payetonkawa.api_commande.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+// Numéros tirés d'une séquence PostgreSQL incrémentée par blocs : un nextval réserve
+// une plage de taille-plage numéros pour cette instance, distribués ensuite en mémoire.
+// Les numéros d'une plage non épuisée sont perdus à l'arrêt (trous sans conséquence).
+@Component
+@ConditionalOnProperty(name = "commandes.numero.strategie", havingValue = "sequence", matchIfMissing = true)
+@Slf4j
+public class SequenceNumCommandeGenerator implements NumCommandeGenerator {
+
+    private record Plage(AtomicLong courant, long fin) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String sequence;
+    private final int taillePlage;
+
+    private final AtomicReference<Plage> plage = new AtomicReference<>(new Plage(new AtomicLong(), 0));
+
+    public SequenceNumCommandeGenerator(JdbcTemplate jdbcTemplate,
+            @Value("${commandes.numero.sequence:num_commande_seq}") String sequence,
+            @Value("${commandes.numero.taille-plage:100}") int taillePlage) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequence = sequence;
+        this.taillePlage = taillePlage;
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("create sequence if not exists " + sequence + " increment by " + taillePlage);
+        // Deux instances avec des tailles de plage différentes se chevaucheraient
+        Long increment = jdbcTemplate.queryForObject(
+                "select increment_by from pg_sequences where sequencename = ?", Long.class, sequence);
+        if (increment == null || increment != taillePlage) {
+            throw new IllegalStateException("La séquence " + sequence + " est incrémentée de " + increment
+                    + " alors que commandes.numero.taille-plage vaut " + taillePlage);
+        }
+    }
+
+    @Override
+    public String prochain() {
+        while (true) {
+            Plage p = plage.get();
+            // Chemin courant sans verrou : un simple incrément atomique
+            long numero = p.courant().getAndIncrement();
+            if (numero < p.fin()) {
+                return PREFIXE + numero;
+            }
+            recharger(p);
+        }
+    }
+
+    // Un seul thread va chercher la plage suivante, les autres réessayent ensuite
+    private synchronized void recharger(Plage epuisee) {
+        if (plage.get() != epuisee) {
+            return;
+        }
+        Long debut = jdbcTemplate.queryForObject("select nextval('" + sequence + "')", Long.class);
+        if (debut == null) {
+            throw new IllegalStateException("La séquence " + sequence + " n'a retourné aucune valeur");
+        }
+        log.debug("Nouvelle plage de numéros de commande [{}, {})", debut, debut + taillePlage);
+        plage.set(new Plage(new AtomicLong(debut), debut + taillePlage));
+    }
+}
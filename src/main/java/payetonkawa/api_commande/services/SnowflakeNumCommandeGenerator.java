@@ -0,0 +1,57 @@
+package payetonkawa.api_commande.services;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Identifiant 64 bits façon Snowflake, sans aucun accès base :
+// 41 bits de millisecondes depuis EPOCH | 10 bits de nœud | 12 bits de séquence.
+// L'unicité entre instances repose sur un numéro de nœud distinct par réplica.
+@Component
+@ConditionalOnProperty(name = "commandes.numero.strategie", havingValue = "snowflake")
+public class SnowflakeNumCommandeGenerator implements NumCommandeGenerator {
+
+    static final long EPOCH = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    static final int BITS_NOEUD = 10;
+    static final int BITS_SEQUENCE = 12;
+    private static final long MAX_NOEUD = (1L << BITS_NOEUD) - 1;
+
+    private final long noeud;
+
+    // (millisecondes depuis EPOCH << BITS_SEQUENCE) | séquence dans la milliseconde
+    private final AtomicLong etat = new AtomicLong();
+
+    public SnowflakeNumCommandeGenerator(@Value("${commandes.numero.noeud:-1}") long noeud) {
+        if (noeud < 0 || noeud > MAX_NOEUD) {
+            throw new IllegalStateException(
+                    "commandes.numero.noeud doit être fixé entre 0 et " + MAX_NOEUD + " (distinct par instance)");
+        }
+        this.noeud = noeud;
+    }
+
+    @Override
+    public String prochain() {
+        return PREFIXE + prochainId();
+    }
+
+    long prochainId() {
+        while (true) {
+            long precedent = etat.get();
+            long maintenant = System.currentTimeMillis() - EPOCH;
+            // Nouvelle milliseconde : séquence remise à zéro. Sinon (même milliseconde,
+            // ou horloge qui recule) on incrémente ; un débordement de la séquence
+            // passe naturellement à la milliseconde suivante.
+            long suivant = maintenant > (precedent >>> BITS_SEQUENCE)
+                    ? maintenant << BITS_SEQUENCE
+                    : precedent + 1;
+            if (etat.compareAndSet(precedent, suivant)) {
+                long horodatage = suivant >>> BITS_SEQUENCE;
+                long sequence = suivant & ((1L << BITS_SEQUENCE) - 1);
+                return (horodatage << (BITS_NOEUD + BITS_SEQUENCE)) | (noeud << BITS_SEQUENCE) | sequence;
+            }
+        }
+    }
+}
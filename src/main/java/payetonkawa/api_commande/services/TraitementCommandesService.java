@@ -0,0 +1,88 @@
+package payetonkawa.api_commande.services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.server.ResponseStatusException;
+
+import lombok.extern.slf4j.Slf4j;
+import payetonkawa.api_commande.dto.CommandeDto;
+
+// Mode asynchrone de POST /commandes (Prefer: respond-async) : la commande est enregistrée
+// puis traitée par un pool borné, ce qui découple la latence du client de celle de l'API
+// Produits et absorbe les pics. L'issue est consultable sur GET /commandes/{id}/traitement
+// et publiée (commande.created ou commande.rejected).
+@Service
+@Slf4j
+public class TraitementCommandesService {
+
+    private final CommandeService commandeService;
+    private final TaskExecutor executor;
+
+    // Une commande non traitée depuis ce délai est resoumise
+    @Value("${commandes.async.reprise-apres:1m}")
+    private Duration repriseApres;
+
+    @Value("${commandes.async.reprise-lot:100}")
+    private int repriseLot;
+
+    public TraitementCommandesService(CommandeService commandeService,
+            @Qualifier("traitementCommandesExecutor") TaskExecutor executor) {
+        this.commandeService = commandeService;
+        this.executor = executor;
+    }
+
+    // Enregistre la commande (transaction commitée au retour) puis la confie aux workers
+    public CommandeDto accepter(CommandeDto dto) {
+        CommandeDto acceptee = commandeService.accepter(dto);
+        soumettre(acceptee.getId());
+        return acceptee;
+    }
+
+    // Filet de sécurité : file pleine, redémarrage, échec transitoire
+    @Scheduled(fixedDelayString = "${commandes.async.reprise-ms:30000}")
+    public void reprendre() {
+        commandeService.getCommandesEnAttenteDeTraitement(LocalDateTime.now().minus(repriseApres), repriseLot)
+                .forEach(this::soumettre);
+    }
+
+    void soumettre(Long id) {
+        try {
+            executor.execute(() -> traiter(id));
+        } catch (TaskRejectedException e) {
+            log.warn("File de traitement pleine, commande {} reprise plus tard", id);
+        }
+    }
+
+    void traiter(Long id) {
+        try {
+            commandeService.traiter(id);
+        } catch (RuntimeException e) {
+            boolean definitif = !transitoire(e);
+            log.warn("Échec {} du traitement de la commande {} : {}",
+                    definitif ? "définitif" : "transitoire", id, e.getMessage());
+            try {
+                commandeService.enregistrerEchecTraitement(id, e.getMessage(), definitif);
+            } catch (RuntimeException echec) {
+                log.error("Impossible d'enregistrer l'échec de la commande {}", id, echec);
+            }
+        }
+    }
+
+    // API Produits indisponible ou saturée : l'essai suivant peut réussir
+    private static boolean transitoire(RuntimeException e) {
+        if (e instanceof ResponseStatusException statut) {
+            return statut.getStatusCode().is5xxServerError();
+        }
+        return e.getCause() instanceof ResourceAccessException
+                || e.getCause() instanceof HttpServerErrorException;
+    }
+}
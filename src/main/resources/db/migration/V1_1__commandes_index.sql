@@ -0,0 +1,20 @@
+-- Index de la pagination keyset de GET /commandes (tri dateCreation, id, seul ou
+-- derrière un filtre client / statut) et de la lecture de l'outbox. Ils sont déclarés
+-- en @Index sur les entités, mais ddl-auto ne les crée pas de façon fiable sur une
+-- base existante.
+--
+-- Flyway exécute le script dans une transaction : pas de CREATE INDEX CONCURRENTLY
+-- possible ici. Sur une table volumineuse, créer d'abord les index à la main, avec
+-- CONCURRENTLY et les mêmes noms ; le IF NOT EXISTS rend alors la migration sans effet.
+DO $$
+BEGIN
+    IF to_regclass('commandes') IS NOT NULL THEN
+        CREATE INDEX IF NOT EXISTS idx_commandes_date_id ON commandes (date_creation, id);
+        CREATE INDEX IF NOT EXISTS idx_commandes_client_date_id ON commandes (id_client, date_creation, id);
+        CREATE INDEX IF NOT EXISTS idx_commandes_statut_date_id ON commandes (statut, date_creation, id);
+    END IF;
+
+    IF to_regclass('outbox_evenements') IS NOT NULL THEN
+        CREATE INDEX IF NOT EXISTS idx_outbox_a_envoyer ON outbox_evenements (date_envoi, id);
+    END IF;
+END $$;
@@ -0,0 +1,58 @@
+-- Empreinte des adresses (Adresse.calculerEmpreinte) : SHA-256 de
+-- "numeroRue|rue|ville|codePostal|pays", chaque champ texte débarrassé de ses espaces
+-- de bord, ses espaces internes réduits à un seul, et passé en minuscules.
+-- Les adresses existantes sont rétro-calculées, les doublons fusionnés sur la plus
+-- ancienne (les commandes sont rattachées à celle-ci), puis l'index unique sur lequel
+-- s'appuie l'INSERT ... ON CONFLICT (empreinte) est créé.
+-- Sur une base vide, Hibernate crée la colonne et l'index (ddl-auto).
+--
+-- La normalisation doit donner exactement celle de Java, sinon les anciennes adresses
+-- ne sont jamais retrouvées :
+-- - trim() retire les caractères <= U+0020, \s ne couvre que [ \t\n\x0B\f\r] : les
+--   classes sont écrites en clair plutôt que \s, dont le sens dépend de la locale ;
+-- - toLowerCase(Locale.ROOT) suit la casse Unicode : lower() passe par la collation
+--   ICU racine, une base en collation C ne mettrait pas "Évry" en minuscules.
+--   Le serveur doit donc être compilé avec ICU (cas des paquets et images officiels).
+CREATE FUNCTION pg_temp.normaliser(valeur text) RETURNS text
+LANGUAGE sql IMMUTABLE AS $$
+    SELECT lower(regexp_replace(
+            regexp_replace(coalesce(valeur, ''), '^[\x01-\x20]+|[\x01-\x20]+$', '', 'g'),
+            '[ \t\n\x0B\f\r]+', ' ', 'g') COLLATE "und-x-icu")
+$$;
+
+DO $$
+BEGIN
+    IF to_regclass('adresses') IS NULL THEN
+        RETURN;
+    END IF;
+
+    ALTER TABLE adresses ADD COLUMN IF NOT EXISTS empreinte varchar(64);
+
+    UPDATE adresses
+    SET empreinte = encode(sha256(convert_to(concat_ws('|',
+            numero_rue::text,
+            pg_temp.normaliser(rue),
+            pg_temp.normaliser(ville),
+            pg_temp.normaliser(code_postal),
+            pg_temp.normaliser(pays)),
+        'UTF8')), 'hex')
+    WHERE empreinte IS NULL;
+
+    CREATE TEMPORARY TABLE adresses_doublons ON COMMIT DROP AS
+    SELECT id, min(id) OVER (PARTITION BY empreinte) AS conservee
+    FROM adresses;
+    DELETE FROM adresses_doublons WHERE id = conservee;
+
+    IF to_regclass('commandes') IS NOT NULL THEN
+        UPDATE commandes c
+        SET adresse_livraison_id = d.conservee
+        FROM adresses_doublons d
+        WHERE c.adresse_livraison_id = d.id;
+    END IF;
+
+    DELETE FROM adresses a
+    USING adresses_doublons d
+    WHERE a.id = d.id;
+
+    CREATE UNIQUE INDEX IF NOT EXISTS uk_adresses_empreinte ON adresses (empreinte);
+END $$;
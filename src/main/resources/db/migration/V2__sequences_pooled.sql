@@ -0,0 +1,22 @@
+-- Passage des identifiants IDENTITY aux séquences allouées par blocs de 50
+-- (optimiseur pooled d'Hibernate), pour permettre le batch JDBC des INSERT.
+--
+-- Avec l'optimiseur pooled, la valeur retournée par nextval est la borne haute
+-- du bloc [v - 49, v] : la séquence démarre donc à max(id) + 50 pour que le
+-- premier bloc ne recouvre aucun id existant. Sur une base vide (tables pas
+-- encore créées par Hibernate) elle démarre à 50, soit un premier bloc [1, 50].
+DO $$
+DECLARE
+    t text;
+    debut bigint;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['commandes', 'ligne_commande', 'adresses'] LOOP
+        debut := 50;
+        IF to_regclass(t) IS NOT NULL THEN
+            EXECUTE format('SELECT coalesce(max(id), 0) + 50 FROM %I', t) INTO debut;
+            -- Les ids sont désormais fournis par Hibernate
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t);
+        END IF;
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I START WITH %s INCREMENT BY 50', t || '_seq', debut);
+    END LOOP;
+END $$;
@@ -0,0 +1,12 @@
+-- Outbox : identifiants IDENTITY remplacés par une séquence allouée par blocs de 50,
+-- comme en V2, pour que les événements d'un import en masse partent en batch JDBC.
+DO $$
+DECLARE
+    debut bigint := 50;
+BEGIN
+    IF to_regclass('outbox_evenements') IS NOT NULL THEN
+        SELECT coalesce(max(id), 0) + 50 INTO debut FROM outbox_evenements;
+        ALTER TABLE outbox_evenements ALTER COLUMN id DROP IDENTITY IF EXISTS;
+    END IF;
+    EXECUTE format('CREATE SEQUENCE IF NOT EXISTS outbox_evenements_seq START WITH %s INCREMENT BY 50', debut);
+END $$;
@@ -0,0 +1,9 @@
+-- Verrou optimiste (@Version) sur les commandes, exposé en ETag.
+-- Les commandes existantes partent de la version 0 : une colonne nulle serait
+-- ajoutée par ddl-auto, mais Hibernate ne sait pas incrémenter une version nulle.
+DO $$
+BEGIN
+    IF to_regclass('commandes') IS NOT NULL THEN
+        ALTER TABLE commandes ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+    END IF;
+END $$;
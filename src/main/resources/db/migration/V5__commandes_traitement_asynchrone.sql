@@ -0,0 +1,13 @@
+-- Suivi des commandes soumises en mode asynchrone (Prefer: respond-async).
+-- ddl-auto ajouterait tentatives_traitement en "integer not null" sans valeur par
+-- défaut, ce que Postgres refuse sur une table déjà remplie : les commandes
+-- existantes partent de 0 tentative, sans état ni motif (mode synchrone).
+DO $$
+BEGIN
+    IF to_regclass('commandes') IS NOT NULL THEN
+        ALTER TABLE commandes ADD COLUMN IF NOT EXISTS etat_traitement varchar(20);
+        ALTER TABLE commandes ADD COLUMN IF NOT EXISTS tentatives_traitement integer NOT NULL DEFAULT 0;
+        ALTER TABLE commandes ADD COLUMN IF NOT EXISTS motif_rejet varchar(500);
+        CREATE INDEX IF NOT EXISTS idx_commandes_etat_traitement ON commandes (etat_traitement, date_creation);
+    END IF;
+END $$;
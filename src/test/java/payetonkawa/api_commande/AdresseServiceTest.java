@@ -0,0 +1,72 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.repository.AdresseRepository;
+import payetonkawa.api_commande.services.AdresseService;
+
+@ExtendWith(MockitoExtension.class)
+class AdresseServiceTest {
+
+    @Mock
+    private AdresseRepository adresseRepository;
+
+    private AdresseService adresseService;
+
+    @BeforeEach
+    void setUp() {
+        adresseService = new AdresseService(adresseRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(adresseService, "tailleMaxCache", 100L);
+        adresseService.init();
+    }
+
+    private Adresse adresse(String rue) {
+        return new Adresse(null, 10, rue, "Paris", "75001", "France");
+    }
+
+    @Test
+    void trouverOuCreer_adresseDejaVue_aucuneRequete() {
+        when(adresseRepository.insererSiAbsente(anyInt(), any(), any(), any(), any(), anyString()))
+                .thenReturn(Optional.of(7L));
+        Adresse reference = new Adresse();
+        when(adresseRepository.getReferenceById(7L)).thenReturn(reference);
+
+        adresseService.trouverOuCreer(adresse("Rue de la Paix"));
+        // Même adresse à la casse et aux espaces près : servie par le cache
+        Adresse resultat = adresseService.trouverOuCreer(adresse("  rue de la   PAIX "));
+
+        assertSame(reference, resultat);
+        verify(adresseRepository, times(1)).insererSiAbsente(anyInt(), any(), any(), any(), any(), anyString());
+        verify(adresseRepository, never()).findIdByEmpreinte(anyString());
+    }
+
+    @Test
+    void trouverOuCreer_conflitInsertion_relitLAdresseExistante() {
+        Adresse a = adresse("Rue de la Paix");
+        when(adresseRepository.insererSiAbsente(anyInt(), any(), any(), any(), any(), anyString()))
+                .thenReturn(Optional.empty());
+        when(adresseRepository.findIdByEmpreinte(a.calculerEmpreinte())).thenReturn(Optional.of(3L));
+        Adresse existante = new Adresse();
+        when(adresseRepository.getReferenceById(3L)).thenReturn(existante);
+
+        assertSame(existante, adresseService.trouverOuCreer(a));
+    }
+
+    @Test
+    void trouverOuCreer_adresseNull_exception() {
+        assertThrows(RuntimeException.class, () -> adresseService.trouverOuCreer(null));
+    }
+}
@@ -0,0 +1,129 @@
+package payetonkawa.api_commande;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Remplaçants locaux pour les tests de charge, servis par un HttpServer du JDK :
+// - /products/** : API Produits (catalogue, lot, réservations) avec latence configurable
+// - /jwks : jeu de clés publiques d'un realm "local", les jetons étant signés ici
+class BouchonsCharge implements AutoCloseable {
+
+    static final String ISSUER = "http://bouchons-charge/realms/paye-ton-kawa";
+
+    private final HttpServer serveur;
+    private final RSAKey cle;
+    private final long latenceMs;
+
+    BouchonsCharge(long latenceMs) throws IOException, JOSEException {
+        this.latenceMs = latenceMs;
+        this.cle = new RSAKeyGenerator(2048).keyID("charge").generate();
+        this.serveur = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serveur.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        serveur.createContext("/products/", this::produits);
+        serveur.createContext("/jwks", this::jwks);
+        serveur.start();
+    }
+
+    String urlProduits() {
+        return "http://localhost:" + serveur.getAddress().getPort() + "/products/";
+    }
+
+    String urlJwks() {
+        return "http://localhost:" + serveur.getAddress().getPort() + "/jwks";
+    }
+
+    // Jeton porteur des rôles attendus par KeycloakRoleConverter (realm_access.roles)
+    String jeton(String... roles) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("test-charge")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plusSeconds(3600)))
+                .claim("realm_access", Map.of("roles", List.of(roles)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(cle.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(cle));
+        return jwt.serialize();
+    }
+
+    private void jwks(HttpExchange echange) throws IOException {
+        repondre(echange, 200, new JWKSet(cle.toPublicJWK()).toString());
+    }
+
+    private void produits(HttpExchange echange) throws IOException {
+        try (InputStream corps = echange.getRequestBody()) {
+            corps.readAllBytes();
+        }
+        attendre();
+
+        String chemin = echange.getRequestURI().getPath().substring("/products/".length());
+        String methode = echange.getRequestMethod();
+
+        if (chemin.startsWith("stock/reservations")) {
+            repondre(echange, "DELETE".equals(methode) ? 204 : 201, null);
+        } else if (chemin.equals("batch")) {
+            String ids = echange.getRequestURI().getQuery().replaceFirst("^ids=", "");
+            repondre(echange, 200, Arrays.stream(ids.split(","))
+                    .map(id -> produit(Long.parseLong(id)))
+                    .collect(Collectors.joining(",", "[", "]")));
+        } else {
+            repondre(echange, 200, produit(Long.parseLong(chemin)));
+        }
+    }
+
+    private static String produit(long id) {
+        return "{\"id\":" + id + ",\"name\":\"Café " + id + "\",\"description\":\"bouchon\",\"price\":12.9,\"stock\":1000000}";
+    }
+
+    private void attendre() {
+        if (latenceMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latenceMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void repondre(HttpExchange echange, int statut, String json) throws IOException {
+        if (json == null) {
+            echange.sendResponseHeaders(statut, -1);
+            echange.close();
+            return;
+        }
+        byte[] octets = json.getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "application/json");
+        echange.sendResponseHeaders(statut, octets.length);
+        try (OutputStream out = echange.getResponseBody()) {
+            out.write(octets);
+        }
+    }
+
+    @Override
+    public void close() {
+        serveur.stop(0);
+    }
+}
@@ -0,0 +1,262 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import payetonkawa.api_commande.dto.AdresseDto;
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.dto.LigneCommandeDto;
+
+// Test de charge de bout en bout : l'application démarre avec PostgreSQL et RabbitMQ
+// (Testcontainers), l'API Produits et le realm Keycloak étant remplacés par BouchonsCharge.
+// Exclu du build courant ; lancement : mvn -Pcharge test
+@Tag("charge")
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChargeCommandesTest {
+
+    private static final int REQUETES = Integer.getInteger("charge.requetes", 2000);
+    private static final int CONCURRENCE = Integer.getInteger("charge.concurrence", 32);
+    private static final long LATENCE_PRODUITS_MS = Long.getLong("charge.produits.latence-ms", 20);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    @ServiceConnection
+    static RabbitMQContainer rabbitmq = new RabbitMQContainer("rabbitmq:3.13-management-alpine");
+
+    private static final BouchonsCharge bouchons = demarrerBouchons();
+
+    private static BouchonsCharge demarrerBouchons() {
+        try {
+            return new BouchonsCharge(LATENCE_PRODUITS_MS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Impossible de démarrer les bouchons", e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void proprietes(DynamicPropertyRegistry registry) {
+        registry.add("api.produits.url", bouchons::urlProduits);
+        registry.add("securite.jwt.jwk-set-uri", bouchons::urlJwks);
+        registry.add("securite.jwt.issuer", () -> BouchonsCharge.ISSUER);
+        // Les traces de debug fausseraient les mesures
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("logging.level.payetonkawa", () -> "WARN");
+        registry.add("logging.level.org.hibernate", () -> "WARN");
+        registry.add("logging.level.org.springframework.web", () -> "WARN");
+    }
+
+    @AfterAll
+    static void arreterBouchons() {
+        bouchons.close();
+    }
+
+    @LocalServerPort
+    private int port;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private String jeton;
+
+    // Les conflits (409/412 : commande modifiée entre la lecture et l'écriture) sont le
+    // verrou optimiste qui fait son travail, comptés à part des erreurs
+    record Resultat(String scenario, int requetes, int erreurs, int conflits,
+            double p50Ms, double p99Ms, double debitParSeconde) {
+    }
+
+    @Test
+    void charge_create_get_list_update() throws Exception {
+        jeton = bouchons.jeton("COMMANDE_READ", "COMMANDE_WRITE");
+        List<Long> ids = new CopyOnWriteArrayList<>();
+
+        // Chauffe (JIT, pools de connexions, caches) non comptée
+        executer("chauffe", Math.max(REQUETES / 10, CONCURRENCE), i -> creation(), corps -> {
+        });
+
+        List<Resultat> resultats = new ArrayList<>();
+        resultats.add(executer("create", REQUETES, i -> creation(), corps -> ids.add(idDe(corps))));
+        resultats.add(executer("get", REQUETES,
+                i -> requete("/commandes/" + auHasard(ids)).GET().build(), corps -> {
+                }));
+        resultats.add(executer("list", REQUETES,
+                i -> requete("/commandes?taille=20").GET().build(), corps -> {
+                }));
+        resultats.add(executer("update", REQUETES, i -> modification(auHasard(ids)), corps -> {
+        }));
+
+        rapporter(resultats);
+        resultats.forEach(r -> assertEquals(0, r.erreurs(), "erreurs sur " + r.scenario()));
+    }
+
+    // Lance `nombre` requêtes réparties sur CONCURRENCE threads virtuels et mesure
+    // la latence de chacune (temps de réponse complet, corps compris)
+    private Resultat executer(String scenario, int nombre, IntFunction<HttpRequest> requetes,
+            Consumer<String> surReponse) throws Exception {
+        long[] latences = new long[nombre];
+        AtomicInteger suivante = new AtomicInteger();
+        AtomicInteger erreurs = new AtomicInteger();
+        AtomicInteger conflits = new AtomicInteger();
+
+        long debut = System.nanoTime();
+        try (ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> travailleurs = new ArrayList<>();
+            for (int t = 0; t < CONCURRENCE; t++) {
+                travailleurs.add(executeur.submit(() -> {
+                    int i;
+                    while ((i = suivante.getAndIncrement()) < nombre) {
+                        HttpRequest requete = requetes.apply(i);
+                        long envoi = System.nanoTime();
+                        HttpResponse<String> reponse = client.send(requete, HttpResponse.BodyHandlers.ofString());
+                        latences[i] = System.nanoTime() - envoi;
+                        if (reponse.statusCode() == 409 || reponse.statusCode() == 412) {
+                            conflits.incrementAndGet();
+                        } else if (reponse.statusCode() >= 400) {
+                            erreurs.incrementAndGet();
+                        } else {
+                            surReponse.accept(reponse.body());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> travailleur : travailleurs) {
+                travailleur.get();
+            }
+        }
+        double dureeSecondes = (System.nanoTime() - debut) / 1e9;
+
+        Arrays.sort(latences);
+        return new Resultat(scenario, nombre, erreurs.get(), conflits.get(),
+                percentile(latences, 0.50), percentile(latences, 0.99), nombre / dureeSecondes);
+    }
+
+    private static double percentile(long[] tries, double rang) {
+        int index = (int) Math.ceil(rang * tries.length) - 1;
+        return tries[Math.max(index, 0)] / 1e6;
+    }
+
+    private void rapporter(List<Resultat> resultats) throws Exception {
+        System.out.printf("%n%-8s %8s %8s %8s %10s %10s %12s%n",
+                "scénario", "requêtes", "erreurs", "conflits", "p50 (ms)", "p99 (ms)", "débit (/s)");
+        for (Resultat r : resultats) {
+            System.out.printf("%-8s %8d %8d %8d %10.2f %10.2f %12.1f%n", r.scenario(), r.requetes(),
+                    r.erreurs(), r.conflits(), r.p50Ms(), r.p99Ms(), r.debitParSeconde());
+        }
+        File rapport = new File("target/charge-rapport.json");
+        rapport.getParentFile().mkdirs();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(rapport, Map.of(
+                "concurrence", CONCURRENCE,
+                "latenceProduitsMs", LATENCE_PRODUITS_MS,
+                "resultats", resultats));
+    }
+
+    private HttpRequest creation() {
+        return requete("/commandes")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json(commande(5))))
+                .build();
+    }
+
+    // PUT conditionnel, comme un client qui relit la commande avant de la modifier :
+    // la lecture de l'ETag n'entre pas dans la latence mesurée
+    private HttpRequest modification(Long id) {
+        try {
+            HttpResponse<Void> lecture = client.send(requete("/commandes/" + id).GET().build(),
+                    HttpResponse.BodyHandlers.discarding());
+            HttpRequest.Builder modification = requete("/commandes/" + id)
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(json(commande(3))));
+            lecture.headers().firstValue("ETag").ifPresent(etag -> modification.header("If-Match", etag));
+            return modification.build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder requete(String chemin) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + chemin))
+                .header("Authorization", "Bearer " + jeton);
+    }
+
+    private static CommandeDto commande(int nbLignes) {
+        ThreadLocalRandom aleatoire = ThreadLocalRandom.current();
+        AdresseDto adresse = new AdresseDto();
+        // Quelques adresses récurrentes, comme des clients qui reviennent
+        adresse.setNumeroRue(aleatoire.nextInt(1, 50));
+        adresse.setRue("Rue de la Paix");
+        adresse.setVille("Paris");
+        adresse.setCodePostal("75001");
+        adresse.setPays("France");
+
+        List<LigneCommandeDto> lignes = new ArrayList<>();
+        for (int i = 0; i < nbLignes; i++) {
+            lignes.add(new LigneCommandeDto(null, aleatoire.nextLong(1, 500), null, aleatoire.nextInt(1, 4), null, null));
+        }
+
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(aleatoire.nextLong(1, 1000));
+        dto.setAdresseLivraison(adresse);
+        dto.setLignes(lignes);
+        return dto;
+    }
+
+    private static Long auHasard(List<Long> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private String json(Object valeur) {
+        try {
+            return objectMapper.writeValueAsString(valeur);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Long idDe(String corps) {
+        try {
+            return objectMapper.readValue(corps, CommandeDto.class).getId();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
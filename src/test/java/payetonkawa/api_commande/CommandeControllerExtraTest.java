@@ -13,6 +13,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import payetonkawa.api_commande.controller.CommandeController;
 import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.TraitementCommandesService;
 
 @WebMvcTest(CommandeController.class)
 class CommandeControllerExtraTest {
@@ -23,6 +24,9 @@ class CommandeControllerExtraTest {
     @MockBean
     private CommandeService commandeService;
 
+    @MockBean
+    private TraitementCommandesService traitementCommandesService;
+
     /*
      * @Test
      * void getCommandeById_exception_generique_404() throws Exception {
@@ -9,16 +9,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
 
 import payetonkawa.api_commande.Config.TestSecurityConfig;
 import payetonkawa.api_commande.controller.CommandeController;
 import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.model.StatutCommande;
 import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.TraitementCommandesService;
+
+import java.util.List;
+import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @WebMvcTest(CommandeController.class)
@@ -31,6 +39,9 @@ class CommandeControllerTest {
         @MockBean
         private CommandeService commandeService;
 
+        @MockBean
+        private TraitementCommandesService traitementCommandesService;
+
         @Autowired
         private ObjectMapper objectMapper;
 
@@ -46,6 +57,46 @@ class CommandeControllerTest {
                                 .andExpect(jsonPath("$.id").value(1L));
         }
 
+        @Test
+        void getCommandeById_etagAJour_304SansChargerLaCommande() throws Exception {
+                when(commandeService.getVersion(1L)).thenReturn(Optional.of(3L));
+
+                mockMvc.perform(get("/commandes/1").header("If-None-Match", "\"3\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"3\""));
+                verify(commandeService, never()).getCommandeById(any());
+        }
+
+        @Test
+        void getCommandeById_etagPerime_200AvecNouvelEtag() throws Exception {
+                CommandeDto dto = new CommandeDto();
+                dto.setId(1L);
+                dto.setVersion(4L);
+                when(commandeService.getVersion(1L)).thenReturn(Optional.of(4L));
+                when(commandeService.getCommandeById(1L)).thenReturn(dto);
+
+                mockMvc.perform(get("/commandes/1").header("If-None-Match", "\"3\""))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andExpect(jsonPath("$.version").value(4));
+        }
+
+        @Test
+        @WithMockUser(username = "test", roles = { "COMMANDE_READ" })
+        void updateCommande_ifMatchPerime_412() throws Exception {
+                CommandeDto dto = new CommandeDto();
+                dto.setIdClient(1L);
+                dto.setLignes(List.of());
+                when(commandeService.update(eq(1L), any(), eq(3L)))
+                                .thenThrow(new ResponseStatusException(HttpStatus.PRECONDITION_FAILED));
+
+                mockMvc.perform(put("/commandes/1")
+                                .header("If-Match", "\"3\"")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(dto)))
+                                .andExpect(status().isPreconditionFailed());
+        }
+
         @Test
         void getCommandeById_inexistante_notFound() throws Exception {
                 when(commandeService.getCommandeById(1L))
@@ -69,6 +120,27 @@ class CommandeControllerTest {
                                 .andExpect(jsonPath("$.idClient").value(1L));
         }
 
+        @Test
+        @WithMockUser(username = "test", roles = { "COMMANDE_READ" })
+        void createCommande_preferAsync_202AvecUrlDeSuivi() throws Exception {
+                CommandeDto dto = new CommandeDto();
+                dto.setIdClient(1L);
+                CommandeDto acceptee = new CommandeDto();
+                acceptee.setId(42L);
+                acceptee.setStatut(StatutCommande.EN_ATTENTE);
+
+                when(traitementCommandesService.accepter(any())).thenReturn(acceptee);
+
+                mockMvc.perform(post("/commandes")
+                                .header("Prefer", "respond-async")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(dto)))
+                                .andExpect(status().isAccepted()) // 202
+                                .andExpect(header().string("Location", "/commandes/42/traitement"))
+                                .andExpect(jsonPath("$.etatTraitement").value("A_TRAITER"));
+                verify(commandeService, never()).create(any());
+        }
+
         
 
 }
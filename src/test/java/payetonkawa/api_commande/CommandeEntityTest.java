@@ -80,6 +80,28 @@ class CommandeEntityTest {
         assertEquals(new BigDecimal("14.00"), total); // 2*5.50 + 1*3.00 = 14.00
     }
 
+    @Test
+    void commande_totalIncremental_egalAuRecalculAuCentime() {
+        commande.ajouterLigne(ligne1);
+        commande.ajouterLigne(ligne2);
+        assertEquals(new BigDecimal("14.00"), commande.getMontantTotal());
+
+        // Prix arrondi au centime (0.335 -> 0.34) avant le calcul : 3 x 0.34 = 1.02
+        commande.modifierLigne(ligne2, l -> {
+            l.setQuantite(3);
+            l.setPrixUnitaire(new BigDecimal("0.335"));
+        });
+        assertEquals(new BigDecimal("1.02"), ligne2.getMontant());
+        assertEquals(new BigDecimal("12.02"), commande.getMontantTotal());
+
+        commande.supprimerLigne(ligne1);
+        assertEquals(new BigDecimal("1.02"), commande.getMontantTotal());
+
+        BigDecimal incremental = commande.getMontantTotal();
+        commande.recalculerMontantTotal();
+        assertEquals(incremental, commande.getMontantTotal());
+    }
+
     @Test
     void ligneCommande_gettersSetters_ok() {
         // Assert
@@ -0,0 +1,165 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import jakarta.persistence.EntityManagerFactory;
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.dto.PageCommandesDto;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.LigneCommande;
+import payetonkawa.api_commande.model.StatutCommande;
+import payetonkawa.api_commande.services.AdresseService;
+import payetonkawa.api_commande.services.CacheCommandesClient;
+import payetonkawa.api_commande.services.CommandeMetriques;
+import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.NumCommandeGenerator;
+import payetonkawa.api_commande.services.OutboxService;
+import payetonkawa.api_commande.services.ProduitClient;
+
+// Vérifie que les lectures ne déclenchent pas une requête par commande (N+1)
+// et que les écritures de lignes partent en batch JDBC
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // Migrations écrites pour PostgreSQL ; le schéma H2 est généré par Hibernate
+        "spring.flyway.enabled=false"
+})
+@Import({ CommandeService.class, CacheCommandesClient.class })
+class CommandeRequetesSqlTest {
+
+    private static final int NB_COMMANDES = 10;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private CommandeService commandeService;
+
+    @Autowired
+    private CacheCommandesClient cacheClients;
+
+    @MockBean
+    private AdresseService adresseService;
+
+    @MockBean
+    private ProduitClient produitClient;
+
+    @MockBean
+    private OutboxService outboxService;
+
+    @MockBean
+    private NumCommandeGenerator numCommandeGenerator;
+
+    @MockBean
+    private CommandeMetriques commandeMetriques;
+
+    private Statistics statistiques;
+    private Long idCommande;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < NB_COMMANDES; i++) {
+            Adresse adresse = new Adresse(null, i + 1, "Rue de la Paix", "Paris", "75001", "France");
+            Commande c = new Commande();
+            c.setNumCommande("CMD-" + i);
+            c.setIdClient(1L);
+            c.setDateCreation(LocalDateTime.now().minusMinutes(i));
+            c.setStatut(StatutCommande.EN_ATTENTE);
+            c.setAdresseLivraison(adresse);
+            for (long p = 1; p <= 3; p++) {
+                LigneCommande ligne = new LigneCommande();
+                ligne.setProduitId(p);
+                ligne.setLibelleProduit("Produit " + p);
+                ligne.setQuantite(2);
+                ligne.setPrixUnitaire(BigDecimal.TEN);
+                ligne.setCommande(c);
+                c.getLignes().add(ligne);
+            }
+            c.recalculerMontantTotal();
+            idCommande = em.persist(c).getId();
+        }
+        em.flush();
+        em.clear();
+
+        // Comptage des requêtes d'un défaut de cache
+        cacheClients.vider();
+        statistiques = emf.unwrap(SessionFactory.class).getStatistics();
+        statistiques.clear();
+    }
+
+    @Test
+    void lister_pageComplete_deuxRequetes() {
+        PageCommandesDto page = commandeService.lister(null, null, null, null, null, NB_COMMANDES);
+
+        assertEquals(NB_COMMANDES, page.getCommandes().size());
+        page.getCommandes().forEach(c -> {
+            assertEquals(3, c.getLignes().size());
+            assertEquals("Paris", c.getAdresseLivraison().getVille());
+        });
+        // commandes + adresses jointes, puis les lignes de toute la page en un lot
+        assertEquals(2, statistiques.getPrepareStatementCount());
+    }
+
+    @Test
+    void getCommandesByClientId_uneSeuleRequete() {
+        List<CommandeDto> commandes = commandeService.getCommandesByClientId(1L);
+
+        assertEquals(NB_COMMANDES, commandes.size());
+        commandes.forEach(c -> assertEquals(3, c.getLignes().size()));
+        assertEquals(1, statistiques.getPrepareStatementCount());
+    }
+
+    @Test
+    void persister_commande50Lignes_insertsEnBatch() {
+        Commande c = new Commande();
+        c.setNumCommande("CMD-GROS");
+        c.setIdClient(2L);
+        c.setAdresseLivraison(new Adresse(null, 99, "Quai des Marques", "Lyon", "69002", "France"));
+        for (long p = 1; p <= 50; p++) {
+            LigneCommande ligne = new LigneCommande();
+            ligne.setProduitId(p);
+            ligne.setLibelleProduit("Produit " + p);
+            ligne.setQuantite(1);
+            ligne.setPrixUnitaire(BigDecimal.ONE);
+            ligne.setCommande(c);
+            c.getLignes().add(ligne);
+        }
+        c.recalculerMontantTotal();
+
+        em.persist(c);
+        em.flush();
+
+        assertEquals(52, statistiques.getEntityInsertCount());
+        // Avec IDENTITY : au moins 52 INSERT. Ici un INSERT par table (batch) plus
+        // au plus un appel de séquence par table.
+        assertTrue(statistiques.getPrepareStatementCount() <= 6,
+                "requêtes préparées : " + statistiques.getPrepareStatementCount());
+    }
+
+    @Test
+    void getCommandeById_uneSeuleRequete() {
+        CommandeDto commande = commandeService.getCommandeById(idCommande);
+
+        assertEquals(3, commande.getLignes().size());
+        assertNotNull(commande.getAdresseLivraison());
+        assertEquals(1, statistiques.getPrepareStatementCount());
+    }
+}
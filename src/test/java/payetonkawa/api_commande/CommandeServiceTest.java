@@ -5,28 +5,47 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.server.ResponseStatusException;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import payetonkawa.api_commande.Config.TestSecurityConfig;
 import payetonkawa.api_commande.dto.AdresseDto;
 import payetonkawa.api_commande.dto.CommandeDto;
 import payetonkawa.api_commande.dto.LigneCommandeDto;
+import payetonkawa.api_commande.dto.PageCommandesDto;
 import payetonkawa.api_commande.dto.ProductDto;
 import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.EtatTraitement;
+import payetonkawa.api_commande.model.LigneCommande;
 import payetonkawa.api_commande.model.StatutCommande;
-import payetonkawa.api_commande.repository.AdresseRepository;
 import payetonkawa.api_commande.repository.CommandeRepository;
 import payetonkawa.api_commande.repository.LigneCommandeRepository;
+import payetonkawa.api_commande.services.AdresseService;
+import payetonkawa.api_commande.services.CacheCommandesClient;
+import payetonkawa.api_commande.services.CommandeMetriques;
 import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.NumCommandeGenerator;
+import payetonkawa.api_commande.services.OutboxService;
 import payetonkawa.api_commande.services.ProduitClient;
+import payetonkawa.api_commande.services.ProduitClient.PreparationCommande;
 
 @ExtendWith(MockitoExtension.class)
 @Import(TestSecurityConfig.class)
@@ -36,7 +55,7 @@ class CommandeServiceTest {
     private CommandeRepository commandeRepository;
 
     @Mock
-    private AdresseRepository adresseRepository;
+    private AdresseService adresseService;
 
     @Mock
     private LigneCommandeRepository ligneCommandeRepository;
@@ -44,6 +63,20 @@ class CommandeServiceTest {
     @Mock
     private ProduitClient produitClient;
 
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private NumCommandeGenerator numCommandeGenerator;
+
+    private final SimpleMeterRegistry registre = new SimpleMeterRegistry();
+
+    @Spy
+    private CommandeMetriques metriques = new CommandeMetriques(registre);
+
+    @Spy
+    private CacheCommandesClient cacheClients = new CacheCommandesClient(100, Duration.ofMinutes(5));
+
     @InjectMocks
     private CommandeService commandeService;
 
@@ -66,9 +99,10 @@ class CommandeServiceTest {
         ProductDto produit = new ProductDto();
         produit.setId(1L);
         produit.setName("Produit Test");
-        produit.setPrice(10.0f);
+        produit.setPrice(new BigDecimal("10.00"));
         produit.setStock(10);
-        when(produitClient.getProduitById(1L)).thenReturn(produit);
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
         Commande saved = new Commande();
         saved.setStatut(StatutCommande.EN_COURS);
         when(commandeRepository.save(any(Commande.class))).thenReturn(saved);
@@ -76,6 +110,62 @@ class CommandeServiceTest {
         assertNotNull(result);
         assertEquals(StatutCommande.EN_COURS, result.getStatut());
         verify(commandeRepository).save(any(Commande.class));
+        verify(outboxService).enregistrer("commande.created", result);
+    }
+
+    @Test
+    void create_memeProduitSurPlusieursLignes_unSeulAppelProduits() {
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(1L);
+        LigneCommandeDto ligne1 = new LigneCommandeDto();
+        ligne1.setProduitId(1L);
+        ligne1.setQuantite(2);
+        LigneCommandeDto ligne2 = new LigneCommandeDto();
+        ligne2.setProduitId(1L);
+        ligne2.setQuantite(3);
+        dto.setLignes(List.of(ligne1, ligne2));
+        AdresseDto adresse = new AdresseDto();
+        adresse.setRue("10 Rue de Paris");
+        dto.setAdresseLivraison(adresse);
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setName("Produit Test");
+        produit.setPrice(new BigDecimal("10.00"));
+        produit.setStock(10);
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
+        when(commandeRepository.save(any(Commande.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        CommandeDto result = commandeService.create(dto);
+
+        assertEquals(2, result.getLignes().size());
+        verify(produitClient, times(1)).preparerCommande(anyString(), eq(Map.of(1L, 5)));
+        verify(produitClient, never()).getProduitById(any());
+    }
+
+    @Test
+    void create_echecSauvegarde_reservationAnnulee() {
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(1L);
+        LigneCommandeDto ligne = new LigneCommandeDto();
+        ligne.setProduitId(1L);
+        ligne.setQuantite(2);
+        dto.setLignes(List.of(ligne));
+        AdresseDto adresse = new AdresseDto();
+        adresse.setRue("10 Rue de Paris");
+        dto.setAdresseLivraison(adresse);
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setName("Produit Test");
+        produit.setPrice(new BigDecimal("10.00"));
+        produit.setStock(10);
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
+        when(commandeRepository.save(any(Commande.class))).thenThrow(new RuntimeException("Erreur base"));
+
+        assertThrows(RuntimeException.class, () -> commandeService.create(dto));
+
+        verify(produitClient).annulerReservation("reservation-1");
     }
 
     // ------------------ Exceptions / validations ------------------
@@ -142,7 +232,8 @@ class CommandeServiceTest {
         dto.setAdresseLivraison(adresse);
 
         // Produit inexistant
-        when(produitClient.getProduitById(1L)).thenReturn(null);
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(), "reservation-1"));
 
         RuntimeException ex = assertThrows(RuntimeException.class,
                 () -> commandeService.create(dto));
@@ -166,17 +257,153 @@ class CommandeServiceTest {
         adresse.setRue("Rue");
         dto.setAdresseLivraison(adresse);
 
-        ProductDto produit = new ProductDto();
-        produit.setId(1L);
-        produit.setName("Produit Test");
-        produit.setPrice(10.0f);
-        produit.setStock(2); // insuffisant
-        when(produitClient.getProduitById(1L)).thenReturn(produit);
+        // La réservation fait foi : l'API Produits la refuse (409)
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenThrow(new RuntimeException("Stock insuffisant pour la réservation reservation-1",
+                        HttpClientErrorException.create(HttpStatus.CONFLICT, "Conflict", null, null, null)));
 
         RuntimeException ex = assertThrows(RuntimeException.class,
                 () -> commandeService.create(dto));
 
         assertTrue(ex.getMessage().toLowerCase().contains("stock"));
+        assertEquals(1, registre.get("commandes.stock.rejets").tag("operation", "create").counter().count());
+    }
+
+    @Test
+    void create_commande_ok_etapesMesurees() {
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(1L);
+        LigneCommandeDto ligne = new LigneCommandeDto();
+        ligne.setProduitId(1L);
+        ligne.setQuantite(2);
+        dto.setLignes(List.of(ligne));
+        AdresseDto adresse = new AdresseDto();
+        adresse.setRue("10 Rue de Paris");
+        dto.setAdresseLivraison(adresse);
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setName("Produit Test");
+        produit.setPrice(new BigDecimal("10.00"));
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
+        when(commandeRepository.save(any(Commande.class))).thenAnswer(i -> i.getArgument(0));
+
+        commandeService.create(dto);
+
+        for (String etape : List.of("validation", "adresse", "produits", "sauvegarde", "mapping", "outbox")) {
+            assertEquals(1, registre.get("commandes.etape").tags("operation", "create", "etape", etape, "issue", "succes")
+                    .timer().count(), etape);
+        }
+        assertEquals(1, registre.get("commandes.lignes").summary().count());
+    }
+
+    @Test
+    void create_produitsIndisponibles_echecCompteParEtape() {
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(1L);
+        LigneCommandeDto ligne = new LigneCommandeDto();
+        ligne.setProduitId(1L);
+        ligne.setQuantite(1);
+        dto.setLignes(List.of(ligne));
+        dto.setAdresseLivraison(new AdresseDto());
+        when(produitClient.preparerCommande(anyString(), anyMap()))
+                .thenThrow(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "API Produits indisponible"));
+
+        assertThrows(ResponseStatusException.class, () -> commandeService.create(dto));
+
+        assertEquals(1, registre.get("commandes.echecs")
+                .tags("operation", "create", "etape", "produits", "raison", "ResponseStatusException")
+                .counter().count());
+    }
+
+    @Test
+    void accepter_enregistreSansAppelerLApiProduits() {
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(1L);
+        dto.setStatut(StatutCommande.LIVREE);
+        LigneCommandeDto ligne = new LigneCommandeDto();
+        ligne.setProduitId(1L);
+        ligne.setQuantite(2);
+        dto.setLignes(List.of(ligne));
+        dto.setAdresseLivraison(new AdresseDto());
+        when(commandeRepository.save(any(Commande.class))).thenAnswer(i -> i.getArgument(0));
+
+        CommandeDto result = commandeService.accepter(dto);
+
+        assertEquals(StatutCommande.EN_ATTENTE, result.getStatut());
+        assertEquals(1, result.getLignes().size());
+        verify(commandeRepository).save(argThat(c -> c.getEtatTraitement() == EtatTraitement.A_TRAITER));
+        verifyNoInteractions(produitClient, outboxService);
+    }
+
+    @Test
+    void traiter_prixTotalEtEvenement() {
+        Commande commande = new Commande();
+        commande.setId(1L);
+        commande.setEtatTraitement(EtatTraitement.A_TRAITER);
+        LigneCommande ligne = new LigneCommande();
+        ligne.setProduitId(1L);
+        ligne.setQuantite(3);
+        commande.getLignes().add(ligne);
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setName("Produit Test");
+        produit.setPrice(new BigDecimal("10.00"));
+        when(commandeRepository.findATraiter(1L, EtatTraitement.A_TRAITER)).thenReturn(Optional.of(commande));
+        when(produitClient.preparerCommande(anyString(), eq(Map.of(1L, 3))))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
+        when(commandeRepository.save(commande)).thenReturn(commande);
+
+        commandeService.traiter(1L);
+
+        assertEquals(EtatTraitement.ACCEPTEE, commande.getEtatTraitement());
+        assertEquals(0, new BigDecimal("30").compareTo(commande.getMontantTotal()));
+        assertEquals("Produit Test", ligne.getLibelleProduit());
+        verify(outboxService).enregistrer(eq("commande.created"), any(CommandeDto.class));
+    }
+
+    @Test
+    void traiter_dejaPrise_rienAFaire() {
+        when(commandeRepository.findATraiter(1L, EtatTraitement.A_TRAITER)).thenReturn(Optional.empty());
+
+        commandeService.traiter(1L);
+
+        verifyNoInteractions(produitClient, outboxService);
+    }
+
+    @Test
+    void enregistrerEchecTraitement_transitoirePuisEpuise_rejetee() {
+        ReflectionTestUtils.setField(commandeService, "tentativesMaxTraitement", 2);
+        Commande commande = new Commande();
+        commande.setId(1L);
+        commande.setEtatTraitement(EtatTraitement.A_TRAITER);
+        when(commandeRepository.findATraiter(1L, EtatTraitement.A_TRAITER)).thenReturn(Optional.of(commande));
+
+        commandeService.enregistrerEchecTraitement(1L, "API Produits indisponible", false);
+        assertEquals(EtatTraitement.A_TRAITER, commande.getEtatTraitement());
+
+        commandeService.enregistrerEchecTraitement(1L, "API Produits indisponible", false);
+        assertEquals(EtatTraitement.REJETEE, commande.getEtatTraitement());
+        assertEquals(StatutCommande.ANNULEE, commande.getStatut());
+        assertEquals("API Produits indisponible", commande.getMotifRejet());
+        verify(outboxService).enregistrer(eq("commande.rejected"), any(CommandeDto.class));
+    }
+
+    @Test
+    void getCommandesByClientId_serviDepuisLeCacheJusquAUneEcriture() {
+        Commande commande = new Commande();
+        commande.setId(1L);
+        commande.setIdClient(7L);
+        when(commandeRepository.findByIdClient(7L)).thenReturn(List.of(commande));
+        when(commandeRepository.findById(1L)).thenReturn(Optional.of(commande));
+
+        commandeService.getCommandesByClientId(7L);
+        commandeService.getCommandesByClientId(7L);
+        verify(commandeRepository, times(1)).findByIdClient(7L);
+
+        commandeService.delete(1L);
+        commandeService.getCommandesByClientId(7L);
+        verify(commandeRepository, times(2)).findByIdClient(7L);
     }
 
     @Test
@@ -210,6 +437,7 @@ class CommandeServiceTest {
         commandeService.delete(1L);
 
         verify(commandeRepository).deleteById(1L);
+        verify(outboxService).enregistrer(eq("commande.deleted"), any(CommandeDto.class));
     }
 
     @Test
@@ -263,10 +491,10 @@ class CommandeServiceTest {
         ProductDto produit = new ProductDto();
         produit.setId(1L);
         produit.setStock(10);
-        produit.setPrice(5.0f);
+        produit.setPrice(new BigDecimal("5.00"));
 
-        when(produitClient.getProduitById(1L))
-                .thenReturn(produit);
+        when(produitClient.preparerCommande(anyString(), anyCollection(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
 
         LigneCommandeDto ligne = new LigneCommandeDto();
         ligne.setProduitId(1L);
@@ -282,6 +510,96 @@ class CommandeServiceTest {
         verify(commandeRepository).save(any());
     }
 
+    @Test
+    void updateCommandeLignes_diff_seulesLesVariationsDeStockReservees() {
+        Commande existante = new Commande();
+        existante.setId(1L);
+        LigneCommande modifiee = ligne(10L, 1L, 2, "5.00");
+        LigneCommande inchangee = ligne(11L, 2L, 1, "3.00");
+        LigneCommande retiree = ligne(12L, 3L, 4, "1.00");
+        existante.getLignes().addAll(List.of(modifiee, inchangee, retiree));
+        existante.recalculerMontantTotal();
+        inchangee.setLibelleProduit("Libellé d'origine");
+        when(commandeRepository.findById(1L)).thenReturn(Optional.of(existante));
+        when(commandeRepository.saveAndFlush(any())).thenAnswer(inv -> inv.getArgument(0));
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setName("Produit 1");
+        produit.setPrice(new BigDecimal("5.00"));
+        produit.setStock(10);
+        when(produitClient.preparerCommande(anyString(), anyCollection(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
+
+        CommandeDto result = commandeService.updateCommandeLignes(1L, List.of(
+                new LigneCommandeDto(10L, 1L, null, 3, null, null),
+                new LigneCommandeDto(11L, 2L, null, 1, null, null)));
+
+        // +1 sur le produit modifié, restitution du produit retiré, rien sur la ligne inchangée
+        verify(produitClient).preparerCommande(anyString(), eq(Set.of(1L)), eq(Map.of(1L, 1, 3L, -4)));
+        assertEquals(2, result.getLignes().size());
+        assertSame(inchangee, existante.getLignes().get(1));
+        assertEquals("Libellé d'origine", inchangee.getLibelleProduit());
+        assertEquals(0, new BigDecimal("18.00").compareTo(result.getMontantTotal()));
+        assertNotNull(existante.getDateModification());
+    }
+
+    @Test
+    void updateLigne_uneLigne_totalAjusteSansChargerLaCommande() {
+        Commande commande = new Commande();
+        commande.setId(1L);
+        commande.setVersion(2L);
+        LigneCommande ligne = ligne(10L, 1L, 2, "5.00");
+        ligne.setCommande(commande);
+        commande.getLignes().add(ligne);
+        commande.setMontantTotal(new BigDecimal("110.00"));
+        when(ligneCommandeRepository.findAvecCommande(10L, 1L)).thenReturn(Optional.of(ligne));
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setStock(10);
+        when(produitClient.preparerCommande(anyString(), anyCollection(), anyMap()))
+                .thenReturn(new PreparationCommande(Map.of(1L, produit), "reservation-1"));
+
+        LigneCommandeDto modification = new LigneCommandeDto();
+        modification.setQuantite(5);
+        CommandeDto result = commandeService.updateLigne(1L, 10L, modification, 2L);
+
+        verify(produitClient).preparerCommande(anyString(), eq(Set.of(1L)), eq(Map.of(1L, 3)));
+        verify(commandeRepository, never()).findById(any());
+        // Prix conservé : 110 - 10 + 25
+        assertEquals(0, new BigDecimal("125.00").compareTo(result.getMontantTotal()));
+        assertEquals(0, new BigDecimal("5.00").compareTo(ligne.getPrixUnitaire()));
+        verify(commandeRepository).flush();
+        verify(outboxService).enregistrer("commande.updated", result);
+    }
+
+    private static LigneCommande ligne(Long id, Long produitId, int quantite, String prix) {
+        LigneCommande ligne = new LigneCommande();
+        ligne.setId(id);
+        ligne.setProduitId(produitId);
+        ligne.setQuantite(quantite);
+        ligne.setPrixUnitaire(new BigDecimal(prix));
+        return ligne;
+    }
+
+    @Test
+    void update_versionPerimee_412AvantToutAppelProduits() {
+        Commande existante = new Commande();
+        existante.setId(1L);
+        existante.setVersion(4L);
+        when(commandeRepository.findById(1L)).thenReturn(Optional.of(existante));
+
+        CommandeDto dto = new CommandeDto();
+        dto.setIdClient(1L);
+        dto.setLignes(List.of());
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> commandeService.update(1L, dto, 3L));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, ex.getStatusCode());
+        verifyNoInteractions(produitClient);
+        verify(commandeRepository, never()).save(any());
+    }
+
     @Test
     void update_sansLignes_exception() {
         Commande existante = new Commande();
@@ -300,6 +618,36 @@ class CommandeServiceTest {
         assertNotNull(ex);
     }
 
+    @Test
+    void lister_pagePleine_curseurSuivantUtilisable() {
+        ReflectionTestUtils.setField(commandeService, "tailleMaxPage", 100);
+        LocalDateTime date = LocalDateTime.of(2026, 1, 15, 10, 30);
+        Commande c1 = new Commande();
+        c1.setId(3L);
+        c1.setDateCreation(date);
+        Commande c2 = new Commande();
+        c2.setId(2L);
+        c2.setDateCreation(date);
+        Commande c3 = new Commande();
+        c3.setId(1L);
+        c3.setDateCreation(date);
+        when(commandeRepository.findBy(any(Specification.class), any())).thenReturn(List.of(c1, c2, c3));
+
+        PageCommandesDto page = commandeService.lister(null, null, null, null, null, 2);
+
+        assertEquals(2, page.getCommandes().size());
+        assertNotNull(page.getCurseurSuivant());
+        assertDoesNotThrow(() -> commandeService.lister(null, null, null, null, page.getCurseurSuivant(), 2));
+    }
+
+    @Test
+    void lister_curseurInvalide_badRequest() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> commandeService.lister(null, null, null, null, "pas-un-curseur", 10));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    }
+
     /*
      * @Test
      * void delete_ok() {
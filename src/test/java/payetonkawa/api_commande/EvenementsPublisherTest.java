@@ -0,0 +1,94 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import payetonkawa.api_commande.model.EvenementOutbox;
+import payetonkawa.api_commande.services.EvenementsPublisher;
+
+class EvenementsPublisherTest {
+
+    private RabbitTemplate rabbitTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private EvenementsPublisher publisher;
+
+    // Corrélations des messages envoyés, confirmées à la main par les tests
+    private final List<CorrelationData> envoyes = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        RabbitOperations operations = mock(RabbitOperations.class);
+        doAnswer(inv -> {
+            envoyes.add(inv.getArgument(3));
+            return null;
+        }).when(operations).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class)))
+                .thenAnswer(inv -> ((RabbitOperations.OperationsCallback<Object>) inv.getArgument(0))
+                        .doInRabbit(operations));
+        meterRegistry = new SimpleMeterRegistry();
+        publisher = new EvenementsPublisher(rabbitTemplate, meterRegistry, 2, Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(publisher, "exchange", "commandes.exchange");
+    }
+
+    private static EvenementOutbox evenement(long id) {
+        EvenementOutbox evenement = new EvenementOutbox();
+        evenement.setId(id);
+        evenement.setRoutingKey("commande.creee");
+        evenement.setTypePayload("CommandeDto");
+        evenement.setPayload("{}");
+        return evenement;
+    }
+
+    @Test
+    void publier_unSeulCanalParLot_sansAttendreLesConfirmations() {
+        List<EvenementOutbox> nonPublies = publisher.publier(List.of(evenement(1L), evenement(2L)));
+
+        assertTrue(nonPublies.isEmpty());
+        verify(rabbitTemplate, times(1)).invoke(any(RabbitOperations.OperationsCallback.class));
+        assertEquals(0, publisher.placesLibres());
+        assertTrue(publisher.confirmes().isEmpty());
+    }
+
+    @Test
+    void publier_ackEtNack_correlesEtPlacesLiberees() {
+        publisher.publier(List.of(evenement(1L), evenement(2L)));
+
+        envoyes.get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        envoyes.get(1).getFuture().complete(new CorrelationData.Confirm(false, "file pleine"));
+
+        assertEquals(List.of(1L), publisher.confirmes());
+        List<EvenementsPublisher.Echec> echecs = publisher.echecs();
+        assertEquals(1, echecs.size());
+        assertEquals(2L, echecs.get(0).id());
+        assertTrue(echecs.get(0).raison().contains("file pleine"));
+        assertEquals(2, publisher.placesLibres());
+        assertEquals(2, meterRegistry.get("outbox.publication.confirmation").timer().count());
+    }
+
+    @Test
+    void publier_fenetrePleine_resteDuLotRenduSansEchec() {
+        List<EvenementOutbox> nonPublies = publisher.publier(
+                List.of(evenement(1L), evenement(2L), evenement(3L), evenement(4L)));
+
+        assertEquals(2, envoyes.size());
+        assertEquals(List.of(3L, 4L), nonPublies.stream().map(EvenementOutbox::getId).toList());
+        assertTrue(publisher.echecs().isEmpty());
+    }
+}
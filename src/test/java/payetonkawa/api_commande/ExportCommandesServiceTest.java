@@ -0,0 +1,128 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.model.Adresse;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.model.LigneCommande;
+import payetonkawa.api_commande.model.StatutCommande;
+import payetonkawa.api_commande.services.AdresseService;
+import payetonkawa.api_commande.services.CacheCommandesClient;
+import payetonkawa.api_commande.services.CommandeMetriques;
+import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.ExportCommandesService;
+import payetonkawa.api_commande.services.NumCommandeGenerator;
+import payetonkawa.api_commande.services.OutboxService;
+import payetonkawa.api_commande.services.ProduitClient;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.flyway.enabled=false"
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({ CommandeService.class, ExportCommandesService.class })
+class ExportCommandesServiceTest {
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private ExportCommandesService exportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private AdresseService adresseService;
+
+    @MockBean
+    private ProduitClient produitClient;
+
+    @MockBean
+    private OutboxService outboxService;
+
+    @MockBean
+    private NumCommandeGenerator numCommandeGenerator;
+
+    @MockBean
+    private CommandeMetriques commandeMetriques;
+
+    @MockBean
+    private CacheCommandesClient cacheCommandesClient;
+
+    private final LocalDateTime maintenant = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        // Lots plus petits que le jeu de données pour traverser plusieurs clear()
+        ReflectionTestUtils.setField(exportService, "tailleLot", 2);
+
+        for (int i = 0; i < 5; i++) {
+            Commande c = new Commande();
+            c.setNumCommande("CMD-" + i);
+            c.setIdClient(1L);
+            c.setDateCreation(maintenant.minusDays(i));
+            c.setStatut(i % 2 == 0 ? StatutCommande.EN_ATTENTE : StatutCommande.LIVREE);
+            c.setAdresseLivraison(new Adresse(null, i + 1, "Rue de la Paix", "Paris", "75001", "France"));
+            LigneCommande ligne = new LigneCommande();
+            ligne.setProduitId(1L);
+            ligne.setLibelleProduit("Café");
+            ligne.setQuantite(2);
+            ligne.setPrixUnitaire(BigDecimal.TEN);
+            ligne.setCommande(c);
+            c.getLignes().add(ligne);
+            c.recalculerMontantTotal();
+            em.persist(c);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void exporter_sansFiltre_uneLigneJsonParCommande() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long total = exportService.exporter(null, null, null, out);
+
+        List<String> lignes = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(5, total);
+        assertEquals(5, lignes.size());
+        for (String json : lignes) {
+            CommandeDto dto = objectMapper.readValue(json, CommandeDto.class);
+            assertEquals(1, dto.getLignes().size());
+            assertEquals("Paris", dto.getAdresseLivraison().getVille());
+        }
+    }
+
+    @Test
+    void exporter_filtreStatutEtDates() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long total = exportService.exporter(StatutCommande.EN_ATTENTE,
+                maintenant.minusDays(3), maintenant.plusSeconds(1), out);
+
+        // EN_ATTENTE : i = 0, 2, 4 ; i = 4 est hors de la fenêtre de dates
+        assertEquals(2, total);
+        assertEquals(2, out.toString(StandardCharsets.UTF_8).lines().count());
+    }
+}
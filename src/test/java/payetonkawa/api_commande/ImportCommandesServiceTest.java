@@ -0,0 +1,154 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import payetonkawa.api_commande.dto.ProductDto;
+import payetonkawa.api_commande.dto.RapportImportDto;
+import payetonkawa.api_commande.model.Commande;
+import payetonkawa.api_commande.repository.CommandeRepository;
+import payetonkawa.api_commande.repository.LigneCommandeRepository;
+import payetonkawa.api_commande.services.AdresseService;
+import payetonkawa.api_commande.services.CacheCommandesClient;
+import payetonkawa.api_commande.services.CommandeMetriques;
+import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.ImportCommandesService;
+import payetonkawa.api_commande.services.NumCommandeGenerator;
+import payetonkawa.api_commande.services.OutboxService;
+import payetonkawa.api_commande.services.ProduitClient;
+
+class ImportCommandesServiceTest {
+
+    private static final String VALIDE = """
+            {"idClient":1,"adresseLivraison":{"rue":"Rue"},"lignes":[{"produitId":1,"quantite":2}]}""";
+
+    private CommandeRepository repository;
+    private ProduitClient produitClient;
+    private OutboxService outboxService;
+    private ImportCommandesService importService;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CommandeRepository.class);
+        produitClient = mock(ProduitClient.class);
+        outboxService = mock(OutboxService.class);
+        AdresseService adresseService = mock(AdresseService.class);
+        CommandeMetriques metriques = new CommandeMetriques(new SimpleMeterRegistry());
+        CacheCommandesClient cacheClients = new CacheCommandesClient(100, Duration.ofMinutes(1));
+        CommandeService commandeService = new CommandeService(repository, mock(LigneCommandeRepository.class),
+                adresseService, produitClient, outboxService, mock(NumCommandeGenerator.class), metriques,
+                cacheClients);
+        importService = new ImportCommandesService(commandeService, repository, adresseService, produitClient,
+                outboxService, metriques, cacheClients, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(importService, "tailleLot", 2);
+
+        when(repository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
+        ProductDto produit = new ProductDto();
+        produit.setId(1L);
+        produit.setName("Produit 1");
+        produit.setPrice(new BigDecimal("10.00"));
+        when(produitClient.getProduitsByIds(any())).thenReturn(Map.of(1L, produit));
+        when(produitClient.getProduitById(1L)).thenReturn(produit);
+    }
+
+    @Test
+    void importer_commandesEnErreurRejeteesSeules() throws Exception {
+        when(produitClient.getProduitsByIds(any())).thenThrow(new RuntimeException("Produit introuvable avec l'ID: 99"));
+        when(produitClient.getProduitById(99L)).thenThrow(new RuntimeException("Produit introuvable avec l'ID: 99"));
+        String json = "[" + VALIDE + ","
+                + "{\"adresseLivraison\":{\"rue\":\"Rue\"},\"lignes\":[{\"produitId\":1,\"quantite\":1}]},"
+                + "{\"idClient\":2,\"adresseLivraison\":{\"rue\":\"Rue\"},\"lignes\":[{\"produitId\":99,\"quantite\":1}]}]";
+
+        RapportImportDto rapport = importer(json);
+
+        assertEquals(3, rapport.getTotal());
+        assertEquals(1, rapport.getCreees());
+        assertTrue(rapport.getResultats().get(0).isSucces());
+        assertEquals("idClient est obligatoire", rapport.getResultats().get(1).getErreur());
+        assertTrue(rapport.getResultats().get(2).getErreur().contains("99"));
+        verify(outboxService).enregistrerTous(eq("commande.created"), argThat(l -> l.size() == 1));
+    }
+
+    @Test
+    void importer_stockRefuse_rejeteeSansCompensation() throws Exception {
+        when(produitClient.reserverStocks(any())).thenAnswer(i -> {
+            Map<String, ?> demandes = i.getArgument(0);
+            String reservationId = demandes.keySet().iterator().next();
+            return Map.of(reservationId, new RuntimeException("Stock insuffisant",
+                    HttpClientErrorException.create(HttpStatus.CONFLICT, "Conflict", null, null, null)));
+        });
+
+        RapportImportDto rapport = importer("[" + VALIDE + "]");
+
+        assertEquals(1, rapport.getRejetees());
+        assertEquals("Stock insuffisant", rapport.getResultats().get(0).getErreur());
+        verify(produitClient, never()).annulerReservation(any());
+        verify(repository, never()).saveAll(any());
+    }
+
+    @Test
+    void importer_ndjsonParLots_ligneIllisibleSignalee() throws Exception {
+        RapportImportDto rapport = importer(VALIDE + "\n" + VALIDE + "\n" + VALIDE + "\n{pas du json");
+
+        assertEquals(4, rapport.getTotal());
+        assertEquals(3, rapport.getCreees());
+        assertTrue(rapport.getResultats().get(3).getErreur().startsWith("JSON invalide"));
+        // Lots de 2 : une lecture du catalogue et un enregistrement par lot
+        verify(produitClient, times(2)).getProduitsByIds(any());
+        verify(outboxService, times(2)).enregistrerTous(eq("commande.created"), any());
+    }
+
+    @Test
+    void importer_echecEnregistrementDuLot_reservationsRestituees() throws Exception {
+        when(repository.saveAll(any())).thenThrow(new RuntimeException("Erreur base"));
+
+        RapportImportDto rapport = importer("[" + VALIDE + "," + VALIDE + "]");
+
+        assertEquals(2, rapport.getRejetees());
+        verify(produitClient, times(2)).annulerReservation(any());
+    }
+
+    @Test
+    void importer_uneCommandeFautiveDansLeLot_seuleRejetee() throws Exception {
+        // Contrainte violée par la seule commande du client 2 : le lot échoue, pas les autres
+        when(repository.saveAll(any())).thenAnswer(i -> {
+            List<Commande> commandes = i.getArgument(0);
+            if (commandes.stream().anyMatch(c -> c.getIdClient() == 2L)) {
+                throw new RuntimeException("Violation de contrainte");
+            }
+            return commandes;
+        });
+        String fautive = VALIDE.replace("\"idClient\":1", "\"idClient\":2");
+
+        RapportImportDto rapport = importer("[" + VALIDE + "," + fautive + "]");
+
+        assertEquals(1, rapport.getCreees());
+        assertTrue(rapport.getResultats().get(0).isSucces());
+        assertEquals("Violation de contrainte", rapport.getResultats().get(1).getErreur());
+        verify(produitClient, times(1)).annulerReservation(any());
+    }
+
+    private RapportImportDto importer(String corps) throws Exception {
+        return importService.importer(new ByteArrayInputStream(corps.getBytes(StandardCharsets.UTF_8)));
+    }
+}
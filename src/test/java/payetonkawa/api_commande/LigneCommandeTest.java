@@ -22,6 +22,17 @@ class LigneCommandeTest {
 
         assertEquals(3L, ligne.getProduitId());
         assertEquals(2, ligne.getQuantite());
-        assertEquals(new BigDecimal("10.0"), ligne.getPrixUnitaire());
+        assertEquals(new BigDecimal("10.00"), ligne.getPrixUnitaire());
+    }
+
+    @Test
+    void ligneCommande_prixATroisDecimales_arrondiAvantLeCalculDuMontant() {
+        LigneCommande ligne = new LigneCommande();
+
+        ligne.setPrixUnitaire(new BigDecimal("1.005"));
+        ligne.setQuantite(3);
+
+        assertEquals(new BigDecimal("1.01"), ligne.getPrixUnitaire());
+        assertEquals(new BigDecimal("3.03"), ligne.getMontant());
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import payetonkawa.api_commande.services.NumCommandeGenerator;
+import payetonkawa.api_commande.services.SequenceNumCommandeGenerator;
+import payetonkawa.api_commande.services.SnowflakeNumCommandeGenerator;
+
+class NumCommandeGeneratorTest {
+
+    private static Set<String> generer(NumCommandeGenerator generator, int threads, int parThread) throws Exception {
+        Set<String> numeros = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> taches = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                taches.add(pool.submit(() -> {
+                    for (int i = 0; i < parThread; i++) {
+                        numeros.add(generator.prochain());
+                    }
+                }));
+            }
+            for (Future<?> tache : taches) {
+                tache.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return numeros;
+    }
+
+    @Test
+    void sequence_uneRequeteParPlage() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L, 11L, 21L, 31L);
+        SequenceNumCommandeGenerator generator = new SequenceNumCommandeGenerator(jdbcTemplate, "num_commande_seq", 10);
+
+        Set<String> numeros = generer(generator, 4, 10);
+
+        assertEquals(40, numeros.size());
+        assertTrue(numeros.contains("CMD-1"));
+        assertTrue(numeros.contains("CMD-40"));
+        verify(jdbcTemplate, times(4)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @Test
+    void sequence_incrementDifferentDeLaPlage_refuseDeDemarrer() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq("num_commande_seq"))).thenReturn(50L);
+        SequenceNumCommandeGenerator generator = new SequenceNumCommandeGenerator(jdbcTemplate, "num_commande_seq", 100);
+
+        assertThrows(IllegalStateException.class, generator::init);
+    }
+
+    @Test
+    void snowflake_uniciteSousConcurrence() throws Exception {
+        Set<String> numeros = generer(new SnowflakeNumCommandeGenerator(7), 8, 20_000);
+
+        assertEquals(160_000, numeros.size());
+        assertTrue(numeros.stream().allMatch(n -> n.startsWith("CMD-")));
+    }
+
+    @Test
+    void snowflake_noeudsDifferents_numerosDistincts() {
+        String a = new SnowflakeNumCommandeGenerator(1).prochain();
+        String b = new SnowflakeNumCommandeGenerator(2).prochain();
+
+        assertNotEquals(a, b);
+    }
+
+    @Test
+    void snowflake_noeudAbsentOuHorsBornes_refuse() {
+        assertThrows(IllegalStateException.class, () -> new SnowflakeNumCommandeGenerator(-1));
+        assertThrows(IllegalStateException.class, () -> new SnowflakeNumCommandeGenerator(1024));
+    }
+}
@@ -0,0 +1,75 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import payetonkawa.api_commande.model.EvenementOutbox;
+import payetonkawa.api_commande.repository.EvenementOutboxRepository;
+import payetonkawa.api_commande.services.EvenementsPublisher;
+import payetonkawa.api_commande.services.OutboxRelay;
+
+class OutboxRelayTest {
+
+    private EvenementOutboxRepository repository;
+    private EvenementsPublisher publisher;
+    private SimpleMeterRegistry meterRegistry;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(EvenementOutboxRepository.class);
+        publisher = mock(EvenementsPublisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new OutboxRelay(repository, publisher,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry);
+        ReflectionTestUtils.setField(relay, "tailleLot", 100);
+        ReflectionTestUtils.setField(relay, "attenteConfirmation", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(relay, "reessaiInitial", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(relay, "reessaiMax", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(relay, "tentativesMax", 3);
+    }
+
+    private EvenementOutbox evenementEnEchec(int tentatives) {
+        EvenementOutbox evenement = new EvenementOutbox();
+        evenement.setId(1L);
+        evenement.setTentatives(tentatives);
+        when(publisher.echecs()).thenReturn(List.of(new EvenementsPublisher.Echec(1L, "nack: file pleine")));
+        when(repository.findAllById(List.of(1L))).thenReturn(List.of(evenement));
+        return evenement;
+    }
+
+    @Test
+    void relayer_echec_reessaiDiffere() {
+        EvenementOutbox evenement = evenementEnEchec(0);
+
+        relay.relayer();
+
+        assertEquals(1, evenement.getTentatives());
+        assertNotNull(evenement.getProchainEssai());
+        assertNull(evenement.getDateAbandon());
+    }
+
+    @Test
+    void relayer_tentativesMaxAtteint_evenementMisDeCote() {
+        EvenementOutbox evenement = evenementEnEchec(2);
+        when(repository.countByDateEnvoiIsNullAndDateAbandonIsNotNull()).thenReturn(1L);
+
+        relay.relayer();
+
+        assertEquals(3, evenement.getTentatives());
+        assertNotNull(evenement.getDateAbandon());
+        assertNull(evenement.getProchainEssai());
+        assertEquals(1, meterRegistry.get("outbox.evenements").tag("issue", "abandon").counter().count());
+        assertEquals(1, meterRegistry.get("outbox.evenements.abandonnes").gauge().value());
+    }
+}
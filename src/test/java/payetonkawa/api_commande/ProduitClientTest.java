@@ -0,0 +1,233 @@
+package payetonkawa.api_commande;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import payetonkawa.api_commande.dto.ProductDto;
+import payetonkawa.api_commande.services.ProduitClient;
+
+class ProduitClientTest {
+
+    private static final String BASE_URL = "http://api-produits/products/";
+
+    private RestTemplate restTemplate;
+    private CircuitBreaker circuitBreaker;
+    private ProduitClient produitClient;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = mock(RestTemplate.class);
+        circuitBreaker = CircuitBreaker.ofDefaults("api-produits");
+        produitClient = new ProduitClient(restTemplate, Runnable::run, new SimpleMeterRegistry(),
+                circuitBreaker, Bulkhead.ofDefaults("api-produits"));
+        ReflectionTestUtils.setField(produitClient, "baseUrl", BASE_URL);
+        ReflectionTestUtils.setField(produitClient, "batchEnabled", true);
+        ReflectionTestUtils.setField(produitClient, "batchPath", "batch");
+        ReflectionTestUtils.setField(produitClient, "tailleLot", 50);
+        ReflectionTestUtils.setField(produitClient, "tailleMaxCache", 100L);
+        ReflectionTestUtils.setField(produitClient, "ttlCache", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(produitClient, "tailleMaxInstantane", 100L);
+        ReflectionTestUtils.setField(produitClient, "ttlInstantane", Duration.ofHours(1));
+        produitClient.init();
+    }
+
+    @Test
+    void getProduitById_secondAppel_serviDepuisLeCache() {
+        when(restTemplate.getForObject(BASE_URL + 1L, ProductDto.class)).thenReturn(produit(1L, 10));
+
+        produitClient.getProduitById(1L);
+        ProductDto produit = produitClient.getProduitById(1L);
+
+        assertEquals("Produit 1", produit.getName());
+        verify(restTemplate, times(1)).getForObject(BASE_URL + 1L, ProductDto.class);
+    }
+
+    @Test
+    void getProduitById_stockJamaisMisEnCache() {
+        when(restTemplate.getForObject(BASE_URL + 1L, ProductDto.class)).thenReturn(produit(1L, 10));
+
+        assertNull(produitClient.getProduitById(1L).getStock());
+    }
+
+    @Test
+    void getProduitsByIds_idsDedoublonnes_unSeulAppelGroupe() {
+        when(restTemplate.getForObject(ArgumentMatchers.<String>argThat(url -> url.startsWith(BASE_URL + "batch?ids=")), eq(ProductDto[].class)))
+                .thenReturn(new ProductDto[] { produit(1L, 5), produit(2L, 5) });
+
+        Map<Long, ProductDto> produits = produitClient.getProduitsByIds(List.of(1L, 2L, 1L));
+
+        assertEquals(2, produits.size());
+        produitClient.getProduitsByIds(List.of(2L, 1L));
+        verify(restTemplate, times(1)).getForObject(ArgumentMatchers.<String>argThat(url -> url.startsWith(BASE_URL + "batch?ids=")), eq(ProductDto[].class));
+    }
+
+    @Test
+    void getProduitById_circuitOuvert_503SansAppelReseau() {
+        circuitBreaker.transitionToOpenState();
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> produitClient.getProduitById(1L));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getLibelleById_circuitOuvert_serviDepuisLInstantane() {
+        // Cache désactivé : seul l'instantané de secours garde le produit
+        ReflectionTestUtils.setField(produitClient, "ttlCache", Duration.ZERO);
+        produitClient.init();
+        when(restTemplate.getForObject(BASE_URL + 1L, ProductDto.class)).thenReturn(produit(1L, 10));
+        produitClient.getLibelleById(1L);
+
+        circuitBreaker.transitionToOpenState();
+
+        assertEquals("Produit 1", produitClient.getLibelleById(1L));
+        verify(restTemplate, times(1)).getForObject(BASE_URL + 1L, ProductDto.class);
+    }
+
+    @Test
+    void preparerCommande_lectureEnEchec_reservationCompensee() {
+        ReflectionTestUtils.setField(produitClient, "reservationsPath", "stock/reservations");
+        when(restTemplate.getForObject(BASE_URL + 1L, ProductDto.class))
+                .thenThrow(new ResourceAccessException("délai dépassé"));
+
+        assertThrows(RuntimeException.class,
+                () -> produitClient.preparerCommande("resa-1", Map.of(1L, 2)));
+
+        verify(restTemplate).delete(BASE_URL + "stock/reservations/resa-1");
+    }
+
+    @Test
+    void preparerCommande_stockRefuse_rienACompenser() {
+        ReflectionTestUtils.setField(produitClient, "reservationsPath", "stock/reservations");
+        when(restTemplate.getForObject(BASE_URL + 1L, ProductDto.class)).thenReturn(produit(1L, 10));
+        when(restTemplate.exchange(eq(BASE_URL + "stock/reservations"), eq(HttpMethod.POST), any(), eq(Void.class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.CONFLICT, "Conflict", null, null, null));
+
+        RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> produitClient.preparerCommande("resa-1", Map.of(1L, 2)));
+
+        assertTrue(ex.getMessage().contains("Stock insuffisant"));
+        verify(restTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    void preparerCommande_poolSature_pasDInterblocage() throws Exception {
+        // Pool de 2 threads et commandes concurrentes plus nombreuses, dont le catalogue
+        // (3 lots) est lui-même réparti sur le pool
+        ThreadPoolTaskExecutor pool = pool(2);
+        ExecutorService commandes = Executors.newFixedThreadPool(4);
+        try {
+            clientSurPool(pool);
+            lotsLents(20);
+
+            List<Future<ProduitClient.PreparationCommande>> preparations = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String reservationId = "resa-" + i;
+                preparations.add(commandes.submit(
+                        () -> produitClient.preparerCommande(reservationId, Map.of(1L, 1, 2L, 1, 3L, 1))));
+            }
+
+            for (Future<ProduitClient.PreparationCommande> preparation : preparations) {
+                assertEquals(3, preparation.get(10, TimeUnit.SECONDS).produits().size());
+            }
+        } finally {
+            commandes.shutdownNow();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void preparerCommande_stockRefusePendantLaLecture_lotsRestantsAbandonnes() {
+        ThreadPoolTaskExecutor pool = pool(4);
+        try {
+            clientSurPool(pool);
+            lotsLents(2000);
+            when(restTemplate.exchange(eq(BASE_URL + "stock/reservations"), eq(HttpMethod.POST), any(), eq(Void.class)))
+                    .thenThrow(HttpClientErrorException.create(HttpStatus.CONFLICT, "Conflict", null, null, null));
+
+            long debut = System.nanoTime();
+            RuntimeException ex = assertThrows(RuntimeException.class,
+                    () -> produitClient.preparerCommande("resa-1", Map.of(1L, 1, 2L, 1, 3L, 1)));
+
+            assertTrue(ex.getMessage().contains("Stock insuffisant"));
+            assertTrue(System.nanoTime() - debut < TimeUnit.SECONDS.toNanos(1),
+                    "la lecture du catalogue aurait dû être abandonnée");
+            verify(restTemplate, never()).delete(anyString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static ThreadPoolTaskExecutor pool(int threads) {
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(threads);
+        pool.setMaxPoolSize(threads);
+        pool.setQueueCapacity(20);
+        pool.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.initialize();
+        return pool;
+    }
+
+    // Client sans cache, catalogue lu par lots d'un produit répartis sur le pool
+    private void clientSurPool(ThreadPoolTaskExecutor pool) {
+        produitClient = new ProduitClient(restTemplate, pool, new SimpleMeterRegistry(),
+                CircuitBreaker.ofDefaults("api-produits"), Bulkhead.ofDefaults("api-produits"));
+        ReflectionTestUtils.setField(produitClient, "baseUrl", BASE_URL);
+        ReflectionTestUtils.setField(produitClient, "batchEnabled", true);
+        ReflectionTestUtils.setField(produitClient, "batchPath", "batch");
+        ReflectionTestUtils.setField(produitClient, "tailleLot", 1);
+        ReflectionTestUtils.setField(produitClient, "reservationsPath", "stock/reservations");
+        ReflectionTestUtils.setField(produitClient, "tailleMaxCache", 100L);
+        ReflectionTestUtils.setField(produitClient, "ttlCache", Duration.ZERO);
+        ReflectionTestUtils.setField(produitClient, "tailleMaxInstantane", 100L);
+        ReflectionTestUtils.setField(produitClient, "ttlInstantane", Duration.ofHours(1));
+        produitClient.init();
+    }
+
+    private void lotsLents(long dureeMs) {
+        when(restTemplate.getForObject(ArgumentMatchers.<String>argThat(url -> url.startsWith(BASE_URL + "batch?ids=")), eq(ProductDto[].class)))
+                .thenAnswer(inv -> {
+                    Thread.sleep(dureeMs);
+                    String url = inv.getArgument(0);
+                    return new ProductDto[] { produit(Long.valueOf(url.substring(url.indexOf('=') + 1)), 5) };
+                });
+    }
+
+    private static ProductDto produit(Long id, int stock) {
+        ProductDto produit = new ProductDto();
+        produit.setId(id);
+        produit.setName("Produit " + id);
+        produit.setPrice(new BigDecimal("10.00"));
+        produit.setStock(stock);
+        return produit;
+    }
+}
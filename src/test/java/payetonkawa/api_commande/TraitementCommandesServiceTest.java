@@ -0,0 +1,82 @@
+package payetonkawa.api_commande;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.server.ResponseStatusException;
+
+import payetonkawa.api_commande.dto.CommandeDto;
+import payetonkawa.api_commande.services.CommandeService;
+import payetonkawa.api_commande.services.TraitementCommandesService;
+
+class TraitementCommandesServiceTest {
+
+    private CommandeService commandeService;
+    private TraitementCommandesService traitementService;
+
+    @BeforeEach
+    void setUp() {
+        commandeService = mock(CommandeService.class);
+        traitementService = new TraitementCommandesService(commandeService, new SyncTaskExecutor());
+        CommandeDto acceptee = new CommandeDto();
+        acceptee.setId(1L);
+        when(commandeService.accepter(any())).thenReturn(acceptee);
+    }
+
+    @Test
+    void accepter_traiteApresEnregistrement() {
+        traitementService.accepter(new CommandeDto());
+
+        verify(commandeService).traiter(1L);
+        verify(commandeService, never()).enregistrerEchecTraitement(any(), any(), anyBoolean());
+    }
+
+    @Test
+    void accepter_stockRefuse_echecDefinitif() {
+        doThrow(new RuntimeException("Stock insuffisant pour la réservation")).when(commandeService).traiter(1L);
+
+        traitementService.accepter(new CommandeDto());
+
+        verify(commandeService).enregistrerEchecTraitement(1L, "Stock insuffisant pour la réservation", true);
+    }
+
+    @Test
+    void accepter_apiProduitsIndisponible_echecTransitoire() {
+        doThrow(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "circuit ouvert"))
+                .when(commandeService).traiter(1L);
+
+        traitementService.accepter(new CommandeDto());
+
+        verify(commandeService).enregistrerEchecTraitement(eq(1L), any(), eq(false));
+    }
+
+    @Test
+    void accepter_delaiDepasse_echecTransitoire() {
+        doThrow(new RuntimeException("Service Produits indisponible", new ResourceAccessException("timeout")))
+                .when(commandeService).traiter(1L);
+
+        traitementService.accepter(new CommandeDto());
+
+        verify(commandeService).enregistrerEchecTraitement(eq(1L), any(), eq(false));
+    }
+
+    @Test
+    void accepter_filePleine_commandeConservee() {
+        TaskExecutor plein = tache -> {
+            throw new TaskRejectedException("file pleine");
+        };
+        traitementService = new TraitementCommandesService(commandeService, plein);
+
+        traitementService.accepter(new CommandeDto());
+
+        verify(commandeService).accepter(any());
+        verify(commandeService, never()).traiter(any());
+    }
+}